@@ -0,0 +1,386 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Bounding volume hierarchy over the bounding boxes of the objects
+ * in an {@link ObjectStore}, used to find which objects could touch
+ * a rectangle
+ * <br>
+ * Leaves hold a box slightly bigger than the object's so small moves
+ * don't change the tree, and the tree is kept balanced by rotations
+ * as leaves are added and removed, so a query visits a number of
+ * nodes proportional to the log of the object count plus the number
+ * of objects found
+ * <br>
+ * Objects with bounds which aren't finite are kept in a separate
+ * list instead, which every query includes
+ * <br>
+ * Kept up to date as a listener of the store
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class AABBTree implements ObjectStore.Listener {
+	
+	/**
+	 * How much bigger than the object's box a leaf's box is
+	 * on each side, in world units
+	 */
+	public static final double MARGIN = 4;
+	
+	private static final int NULL = -1;
+	
+	// Per node
+	private double[] nminx = new double[16], nminy = new double[16], nmaxx = new double[16], nmaxy = new double[16];
+	private int[] parent = new int[16], left = new int[16], right = new int[16], height = new int[16];
+	/**
+	 * Slot of a leaf, or the next free node for a free node
+	 */
+	private int[] nslot = new int[16];
+	private int nodeCount;
+	private int freeNode = NULL;
+	private int root = NULL;
+	
+	// Per slot, the leaf node, or -2 if in the loose list, -1 if neither
+	private int[] leafOf = new int[0];
+	private static final int LOOSE = -2;
+	
+	// Objects with bounds which aren't finite
+	private int[] loose = new int[16];
+	private int looseCount;
+	
+	// Traversal stack, reused
+	private int[] stack = new int[64];
+	
+	private int allocateNode(){
+		int node;
+		if(freeNode!=NULL){
+			node = freeNode;
+			freeNode = nslot[node];
+		}else{
+			if(nodeCount==parent.length){
+				int length = nodeCount*2;
+				nminx = Arrays.copyOf(nminx, length);
+				nminy = Arrays.copyOf(nminy, length);
+				nmaxx = Arrays.copyOf(nmaxx, length);
+				nmaxy = Arrays.copyOf(nmaxy, length);
+				parent = Arrays.copyOf(parent, length);
+				left = Arrays.copyOf(left, length);
+				right = Arrays.copyOf(right, length);
+				height = Arrays.copyOf(height, length);
+				nslot = Arrays.copyOf(nslot, length);
+			}
+			node = nodeCount++;
+		}
+		parent[node] = left[node] = right[node] = NULL;
+		height[node] = 0;
+		nslot[node] = NULL;
+		return node;
+	}
+	
+	private void freeNode(int node){
+		height[node] = -1;
+		nslot[node] = freeNode;
+		freeNode = node;
+	}
+	
+	private boolean isLeaf(int node){
+		return left[node]==NULL;
+	}
+	
+	/**
+	 * Set the box of a node to cover two other nodes
+	 */
+	private void union(int node,int a,int b){
+		nminx[node] = Math.min(nminx[a], nminx[b]);
+		nminy[node] = Math.min(nminy[a], nminy[b]);
+		nmaxx[node] = Math.max(nmaxx[a], nmaxx[b]);
+		nmaxy[node] = Math.max(nmaxy[a], nmaxy[b]);
+	}
+	
+	/**
+	 * Half the perimeter of a node's box, used as its cost
+	 */
+	private double cost(int node){
+		return nmaxx[node]-nminx[node]+nmaxy[node]-nminy[node];
+	}
+	
+	/**
+	 * Half the perimeter of the box covering two nodes
+	 */
+	private double cost(int a,int b){
+		return Math.max(nmaxx[a], nmaxx[b])-Math.min(nminx[a], nminx[b])
+				+Math.max(nmaxy[a], nmaxy[b])-Math.min(nminy[a], nminy[b]);
+	}
+	
+	private void insertLeaf(int leaf){
+		if(root==NULL){
+			root = leaf;
+			parent[leaf] = NULL;
+			return;
+		}
+		// Find the sibling which makes the tree grow the least
+		int node = root;
+		while(!isLeaf(node)){
+			final int a = left[node], b = right[node];
+			final double combined = cost(node, leaf);
+			final double here = 2*combined;
+			// Cost of pushing the leaf further down
+			final double inherited = 2*(combined-cost(node));
+			final double costa = (isLeaf(a)?cost(a, leaf):cost(a, leaf)-cost(a))+inherited;
+			final double costb = (isLeaf(b)?cost(b, leaf):cost(b, leaf)-cost(b))+inherited;
+			if(here<costa&&here<costb)break;
+			node = costa<costb?a:b;
+		}
+		final int sibling = node;
+		final int oldParent = parent[sibling];
+		final int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		union(newParent, sibling, leaf);
+		height[newParent] = height[sibling]+1;
+		left[newParent] = sibling;
+		right[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		if(oldParent==NULL){
+			root = newParent;
+		}else if(left[oldParent]==sibling){
+			left[oldParent] = newParent;
+		}else{
+			right[oldParent] = newParent;
+		}
+		refit(parent[leaf]);
+	}
+	
+	private void removeLeaf(int leaf){
+		if(leaf==root){
+			root = NULL;
+			return;
+		}
+		final int p = parent[leaf];
+		final int grandparent = parent[p];
+		final int sibling = left[p]==leaf?right[p]:left[p];
+		freeNode(p);
+		parent[sibling] = grandparent;
+		if(grandparent==NULL){
+			root = sibling;
+		}else{
+			if(left[grandparent]==p)left[grandparent] = sibling;
+			else right[grandparent] = sibling;
+			refit(grandparent);
+		}
+	}
+	
+	/**
+	 * Walk up from a node, balancing and fixing boxes and heights
+	 */
+	private void refit(int node){
+		while(node!=NULL){
+			node = balance(node);
+			final int a = left[node], b = right[node];
+			height[node] = 1+Math.max(height[a], height[b]);
+			union(node, a, b);
+			node = parent[node];
+		}
+	}
+	
+	/**
+	 * If one child of a node is more than 1 taller than the other,
+	 * rotate the taller one up
+	 * 
+	 * @param a
+	 * @return the node now in the position of <i>a</i>
+	 */
+	private int balance(int a){
+		if(isLeaf(a)||height[a]<2)return a;
+		final int b = left[a], c = right[a];
+		final int diff = height[c]-height[b];
+		if(diff>1){
+			final int f = left[c], g = right[c];
+			left[c] = a;
+			replaceChild(a, c);
+			if(height[f]>height[g]){
+				right[c] = f;
+				right[a] = g;
+				parent[g] = a;
+				union(a, b, g);
+				union(c, a, f);
+				height[a] = 1+Math.max(height[b], height[g]);
+				height[c] = 1+Math.max(height[a], height[f]);
+			}else{
+				right[c] = g;
+				right[a] = f;
+				parent[f] = a;
+				union(a, b, f);
+				union(c, a, g);
+				height[a] = 1+Math.max(height[b], height[f]);
+				height[c] = 1+Math.max(height[a], height[g]);
+			}
+			return c;
+		}
+		if(diff<-1){
+			final int d = left[b], e = right[b];
+			left[b] = a;
+			replaceChild(a, b);
+			if(height[d]>height[e]){
+				right[b] = d;
+				left[a] = e;
+				parent[e] = a;
+				union(a, c, e);
+				union(b, a, d);
+				height[a] = 1+Math.max(height[c], height[e]);
+				height[b] = 1+Math.max(height[a], height[d]);
+			}else{
+				right[b] = e;
+				left[a] = d;
+				parent[d] = a;
+				union(a, c, d);
+				union(b, a, e);
+				height[a] = 1+Math.max(height[c], height[d]);
+				height[b] = 1+Math.max(height[a], height[e]);
+			}
+			return b;
+		}
+		return a;
+	}
+	
+	/**
+	 * Put <i>child</i>, which was below <i>a</i>, where <i>a</i> was,
+	 * and make <i>a</i> its child
+	 */
+	private void replaceChild(int a,int child){
+		final int p = parent[a];
+		parent[child] = p;
+		parent[a] = child;
+		if(p==NULL){
+			root = child;
+		}else if(left[p]==a){
+			left[p] = child;
+		}else{
+			right[p] = child;
+		}
+	}
+	
+	private static boolean finite(double minx,double miny,double maxx,double maxy){
+		// Also false for NaN
+		return Math.abs(minx)<Double.POSITIVE_INFINITY&&Math.abs(miny)<Double.POSITIVE_INFINITY
+				&&Math.abs(maxx)<Double.POSITIVE_INFINITY&&Math.abs(maxy)<Double.POSITIVE_INFINITY;
+	}
+	
+	private void insert(ObjectStore store,int slot){
+		if(slot>=leafOf.length){
+			int length = Math.max(slot+1, leafOf.length*2);
+			int old = leafOf.length;
+			leafOf = Arrays.copyOf(leafOf, length);
+			Arrays.fill(leafOf, old, length, NULL);
+		}
+		final double minx = store.minx[slot], miny = store.miny[slot],
+				maxx = store.maxx[slot], maxy = store.maxy[slot];
+		if(!finite(minx, miny, maxx, maxy)){
+			leafOf[slot] = LOOSE;
+			if(looseCount==loose.length)loose = Arrays.copyOf(loose, looseCount*2);
+			loose[looseCount++] = slot;
+			return;
+		}
+		final int leaf = allocateNode();
+		nminx[leaf] = minx-MARGIN;
+		nminy[leaf] = miny-MARGIN;
+		nmaxx[leaf] = maxx+MARGIN;
+		nmaxy[leaf] = maxy+MARGIN;
+		nslot[leaf] = slot;
+		leafOf[slot] = leaf;
+		insertLeaf(leaf);
+	}
+	
+	private void delete(int slot){
+		if(slot>=leafOf.length)return;
+		final int leaf = leafOf[slot];
+		if(leaf==LOOSE){
+			for(int j=0;j<looseCount;j++){
+				if(loose[j]==slot){
+					loose[j] = loose[--looseCount];
+					break;
+				}
+			}
+		}else if(leaf!=NULL){
+			removeLeaf(leaf);
+			freeNode(leaf);
+		}
+		leafOf[slot] = NULL;
+	}
+	
+	@Override
+	public void added(ObjectStore store,int slot){
+		insert(store, slot);
+	}
+	
+	@Override
+	public void removed(ObjectStore store,int slot){
+		delete(slot);
+	}
+	
+	@Override
+	public void changed(ObjectStore store,int slot){
+		// Usually it is still inside its leaf's box
+		if(slot<leafOf.length){
+			final int leaf = leafOf[slot];
+			if(leaf>=0&&nminx[leaf]<=store.minx[slot]&&nminy[leaf]<=store.miny[slot]
+					&&store.maxx[slot]<=nmaxx[leaf]&&store.maxy[slot]<=nmaxy[leaf])return;
+		}
+		delete(slot);
+		insert(store, slot);
+	}
+	
+	@Override
+	public void cleared(ObjectStore store){
+		nodeCount = 0;
+		freeNode = NULL;
+		root = NULL;
+		looseCount = 0;
+		Arrays.fill(leafOf, NULL);
+	}
+	
+	/**
+	 * Find the objects whose bounding boxes could touch a rectangle,
+	 * some of them might not
+	 * 
+	 * @param minx
+	 * @param miny
+	 * @param maxx
+	 * @param maxy
+	 * @param result slots are added to this, each only once
+	 */
+	public void query(double minx,double miny,double maxx,double maxy,IntList result){
+		for(int j=0;j<looseCount;j++){
+			result.add(loose[j]);
+		}
+		if(root==NULL)return;
+		int[] stack = this.stack;
+		int sp = 0;
+		stack[sp++] = root;
+		while(sp>0){
+			final int node = stack[--sp];
+			if(nmaxx[node]<minx||nmaxy[node]<miny||maxx<nminx[node]||maxy<nminy[node])continue;
+			if(isLeaf(node)){
+				result.add(nslot[node]);
+			}else{
+				if(sp+2>stack.length)stack = this.stack = Arrays.copyOf(stack, stack.length*2);
+				stack[sp++] = left[node];
+				stack[sp++] = right[node];
+			}
+		}
+	}
+	
+	/**
+	 * @return height of the tree, 0 for a single leaf or -1 if empty
+	 */
+	public int height(){
+		return root==NULL?-1:height[root];
+	}
+	
+	public String toString(){
+		return "AABBTree(height "+height()+", "+looseCount+" loose)";
+	}
+	
+}
@@ -0,0 +1,130 @@
+package core;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parses many lines of FCML at once
+ * <br>
+ * Large inputs are split into chunks of lines which are parsed
+ * in parallel on the common {@link ForkJoinPool}, results are
+ * always in line order, same as parsing them one at a time
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public class BulkParser extends RecursiveAction {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * With fewer lines than this, don't bother going parallel
+	 */
+	public static final int PARALLEL_THRESHOLD = 4096;
+	/**
+	 * Most lines to parse in one task
+	 */
+	public static final int CHUNK_SIZE = 1024;
+	
+	final CharSequence text;
+	final int[] starts, ends;
+	final FCObj[] result;
+	final int lo, hi;
+	final ParseCache cache;
+	
+	BulkParser(CharSequence text,int[] starts,int[] ends,FCObj[] result,int lo,int hi,ParseCache cache){
+		this.text = text;
+		this.starts = starts;
+		this.ends = ends;
+		this.result = result;
+		this.lo = lo;
+		this.hi = hi;
+		this.cache = cache;
+	}
+	
+	@Override
+	protected void compute(){
+		if(hi-lo<=CHUNK_SIZE){
+			parseRange(text, starts, ends, result, lo, hi, cache);
+		}else{
+			int mid = (lo+hi)>>>1;
+			invokeAll(new BulkParser(text, starts, ends, result, lo, mid, cache),
+					new BulkParser(text, starts, ends, result, mid, hi, cache));
+		}
+	}
+	
+	static void parseRange(CharSequence text,int[] starts,int[] ends,FCObj[] result,int lo,int hi,ParseCache cache){
+		FCMLParser parser = new FCMLParser();
+		for(int i=lo;i<hi;i++){
+			result[i] = cache==null?parser.parse(text, starts[i], ends[i]):cache.parse(text, starts[i], ends[i], parser);
+		}
+	}
+	
+	/**
+	 * Parse lines given by their bounds, in parallel if there are
+	 * enough of them
+	 * <br>
+	 * The text must not change until this returns
+	 * 
+	 * @param text
+	 * @param starts where each line starts, inclusive
+	 * @param ends where each line ends, exclusive
+	 * @param n number of lines
+	 * @param cache cache to use, can be null
+	 * @return object for each line, null where the line isn't one
+	 */
+	public static FCObj[] parseLines(CharSequence text,int[] starts,int[] ends,int n,ParseCache cache){
+		FCObj[] result = new FCObj[n];
+		if(cache!=null)cache.ensureCapacity(n);
+		if(n<PARALLEL_THRESHOLD){
+			parseRange(text, starts, ends, result, 0, n, cache);
+		}else{
+			ForkJoinPool.commonPool().invoke(new BulkParser(text, starts, ends, result, 0, n, cache));
+		}
+		return result;
+	}
+	
+	/**
+	 * Parse every line of the text
+	 * <br>
+	 * There is always one more line than there are newlines,
+	 * same as the elements of a {@link javax.swing.text.PlainDocument}
+	 * 
+	 * @param text
+	 * @param cache cache to use, can be null
+	 * @return object for each line, null where the line isn't one
+	 */
+	public static FCObj[] parseLines(CharSequence text,ParseCache cache){
+		int len = text.length();
+		int n = 1;
+		for(int i=0;i<len;i++){
+			if(text.charAt(i)=='\n')n++;
+		}
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		int line = 0;
+		for(int i=0;i<len;i++){
+			if(text.charAt(i)=='\n'){
+				ends[line] = i;
+				starts[++line] = i+1;
+			}
+		}
+		ends[line] = len;
+		return parseLines(text, starts, ends, n, cache);
+	}
+	
+	/**
+	 * Parse every line of the text, adding the objects found
+	 * in order to the target
+	 * 
+	 * @param text
+	 * @param target
+	 * @param cache cache to use, can be null
+	 */
+	public static void parseTextTo(CharSequence text,List<FCObj> target,ParseCache cache){
+		for(FCObj obj:parseLines(text, cache)){
+			if(obj!=null)target.add(obj);
+		}
+	}
+	
+}
@@ -0,0 +1,194 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Hash table of grid cells, each holding a list of ints, used by
+ * {@link SpatialGrid} and {@link JointIndex}
+ * <br>
+ * Cells are keyed by their packed coordinates and found by linear
+ * probing, so the grid doesn't need bounds, callers keep the
+ * coordinates within an int
+ * <br>
+ * Cells are never removed one by one, ones which became empty are
+ * dropped the next time the table grows
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+final class CellTable {
+	
+	/**
+	 * Starting number of entries, always a power of 2
+	 */
+	static final int INITIAL_CAPACITY = 64;
+	
+	private long[] keys;
+	private boolean[] used;
+	private int[][] values;
+	private int[] counts;
+	private int cellsUsed;
+	
+	CellTable(){
+		reset(INITIAL_CAPACITY);
+	}
+	
+	private void reset(int n){
+		keys = new long[n];
+		used = new boolean[n];
+		values = new int[n][];
+		counts = new int[n];
+		cellsUsed = 0;
+	}
+	
+	/**
+	 * Remove every cell
+	 */
+	void clear(){
+		reset(INITIAL_CAPACITY);
+	}
+	
+	private static long key(int cx,int cy){
+		return ((long)cx<<32)|(cy&0xffffffffL);
+	}
+	
+	private static int hash(long key,int mask){
+		long h = key*0x9e3779b97f4a7c15L;
+		return (int)(h^(h>>>32))&mask;
+	}
+	
+	/**
+	 * Find a cell in the table
+	 * 
+	 * @return index in the table, or -1 if it has never been used
+	 */
+	int find(int cx,int cy){
+		final long key = key(cx, cy);
+		final long[] keys = this.keys;
+		final boolean[] used = this.used;
+		final int mask = keys.length-1;
+		for(int i=hash(key, mask);;i=(i+1)&mask){
+			if(!used[i])return -1;
+			if(keys[i]==key)return i;
+		}
+	}
+	
+	/**
+	 * Find a cell in the table, adding it if it isn't there
+	 * <br>
+	 * Can move every cell, so indices found before are no longer valid
+	 * 
+	 * @return index in the table
+	 */
+	int get(int cx,int cy){
+		if(cellsUsed*2>=keys.length)rehash();
+		final long key = key(cx, cy);
+		final int mask = keys.length-1;
+		for(int i=hash(key, mask);;i=(i+1)&mask){
+			if(!used[i]){
+				used[i] = true;
+				keys[i] = key;
+				values[i] = new int[4];
+				cellsUsed++;
+				return i;
+			}
+			if(keys[i]==key)return i;
+		}
+	}
+	
+	private void rehash(){
+		long[] oldKeys = keys;
+		boolean[] oldUsed = used;
+		int[][] oldValues = values;
+		int[] oldCounts = counts;
+		// Drop cells which became empty while we're at it
+		int count = 0;
+		for(int i=0;i<oldKeys.length;i++){
+			if(oldUsed[i]&&oldCounts[i]>0)count++;
+		}
+		reset(Bits.gePo2(Math.max(INITIAL_CAPACITY, count*4)));
+		final int mask = keys.length-1;
+		for(int j=0;j<oldKeys.length;j++){
+			if(!oldUsed[j]||oldCounts[j]==0)continue;
+			long key = oldKeys[j];
+			int i = hash(key, mask);
+			while(used[i])i=(i+1)&mask;
+			used[i] = true;
+			keys[i] = key;
+			values[i] = oldValues[j];
+			counts[i] = oldCounts[j];
+			cellsUsed++;
+		}
+	}
+	
+	/**
+	 * Add a value to a cell, adding the cell if it isn't there
+	 */
+	void add(int cx,int cy,int value){
+		final int i = get(cx, cy);
+		int[] cell = values[i];
+		final int n = counts[i];
+		if(n==cell.length)cell = values[i] = Arrays.copyOf(cell, n*2);
+		cell[n] = value;
+		counts[i] = n+1;
+	}
+	
+	/**
+	 * Remove one copy of a value from a cell, the last value
+	 * takes its place so the order is not kept
+	 * 
+	 * @return true if it was there
+	 */
+	boolean remove(int cx,int cy,int value){
+		final int i = find(cx, cy);
+		if(i<0)return false;
+		final int[] cell = values[i];
+		int n = counts[i];
+		for(int j=0;j<n;j++){
+			if(cell[j]==value){
+				cell[j] = cell[--n];
+				counts[i] = n;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Number of entries, indices go from 0 up to this
+	 */
+	int capacity(){
+		return keys.length;
+	}
+	
+	/**
+	 * Is there a cell at this index? It can still be empty
+	 */
+	boolean isUsed(int i){
+		return used[i];
+	}
+	
+	/**
+	 * Values in the cell at an index, only the first
+	 * {@link #count(int)} are in use
+	 */
+	int[] values(int i){
+		return values[i];
+	}
+	
+	/**
+	 * Number of values in the cell at an index
+	 */
+	int count(int i){
+		return counts[i];
+	}
+	
+	/**
+	 * Number of cells in the table, including empty ones
+	 * not dropped yet
+	 */
+	int size(){
+		return cellsUsed;
+	}
+	
+}
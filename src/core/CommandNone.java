@@ -204,7 +204,7 @@ public class CommandNone implements ActiveCommand{
 			// 0 -> center the view
 			double tx=0,ty=0;
 			if(view.objSel.size()>0){// If object is selected, go to that object instead
-				FCObj obj = view.objSel.get(0);
+				FCObj obj = view.objSel.first();
 				tx=obj.x;
 				ty=obj.y;
 			}
@@ -241,13 +241,73 @@ public class CommandNone implements ActiveCommand{
 			// Delete selection
 			view.restoreBackupSel();
 			if(view.objSel.size()>0){
-				view.objDoc.removeAll(new HashSet<>(view.objSel));
+				view.objDoc.removeIf(view.objSel::contains);
 				view.objSel.clear();
 				Main.updateTextFromObj();
 				view.repaint();
 			}
 			break;
 		}
+		case KeyEvent.VK_O:{
+			// Select everything which overlaps something
+			// Shift -> only design pieces and what they start inside of
+			view.restoreBackupSel();
+			OverlapReport report = OverlapReport.find(view.objStore, shift?OverlapReport.DESIGN_IN_LEVEL:OverlapReport.ALL);
+			view.objSel.clear();
+			for(int i=0,n=report.size();i<n;i++){
+				view.objSel.add(view.objStore.get(report.getFirst(i)));
+				view.objSel.add(view.objStore.get(report.getSecond(i)));
+			}
+			Main.updateTextSelectionFromObj();
+			view.repaint();
+			break;
+		}
+		case KeyEvent.VK_P:{
+			// Toggle picking what is drawn under the mouse
+			if(!ctrl&&!alt){
+				view.pixelPicking=!view.pixelPicking;
+			}
+			break;
+		}
+		case KeyEvent.VK_D:{
+			// Leave out more detail, shift -> less, ctrl -> back to the default
+			if(!alt){
+				if(ctrl){
+					view.setDetailThreshold(GraphicEditorPane.DETAIL_THRESHOLD);
+				}else if(shift){// Halve it, and after a few times draw everything
+					double threshold = view.detailThreshold*0.5;
+					view.setDetailThreshold(threshold<0.125?0:threshold);
+				}else{
+					view.setDetailThreshold(Math.max(view.detailThreshold*2, GraphicEditorPane.DETAIL_THRESHOLD));
+				}
+			}
+			break;
+		}
+		case KeyEvent.VK_J:{
+			view.restoreBackupSel();
+			IntList slots = new IntList();
+			for(FCObj obj:view.objSel){
+				if(view.objStore.has(obj))slots.add(obj.id);
+			}
+			if(shift){// Select what the selection could be jointed to
+				IntList candidates = new IntList();
+				for(int i=0,n=slots.size();i<n;i++){
+					view.jointIndex.getCandidates(slots.get(i), JointIndex.DEFAULT_TOLERANCE, candidates);
+				}
+				for(int i=0,n=candidates.size();i<n;i++){
+					view.objSel.add(view.objStore.get(candidates.get(i)));
+				}
+				Main.updateTextSelectionFromObj();
+				view.repaint();
+			}else{// Joint the selection, or everything if nothing is selected
+				int added = view.jointIndex.autoJoint(view.objStore, slots.isEmpty()?null:slots, JointIndex.DEFAULT_TOLERANCE);
+				if(added>0){
+					Main.updateTextFromObj();
+					view.repaint();
+				}
+			}
+			break;
+		}
 		case KeyEvent.VK_G:{
 			// Translate selection
 			if(view.objSel.size()>0){
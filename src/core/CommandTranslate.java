@@ -42,6 +42,7 @@ public class CommandTranslate implements ActiveCommand{
 		for(FCObj obj:view.objSel){
 			FCObj copy = backupDoc.get(obj);
 			obj.copyFrom(copy);
+			view.objStore.update(obj);
 		}
 	}
 	
@@ -54,9 +55,9 @@ public class CommandTranslate implements ActiveCommand{
 		double wdy = dy*invScale;
 		switch(direction){
 		case 1:{
-			final double r = Math.toRadians(view.objSel.get(0).r),
-					cr = Math.cos(r),
-					sr = Math.sin(r);
+			final FCObj first = view.objSel.first();
+			final double cr = first.getCos(),
+					sr = first.getSin();
 			wdx = wdx*cr;
 			wdy = wdx*sr;
 			break;
@@ -66,9 +67,9 @@ public class CommandTranslate implements ActiveCommand{
 			break;
 		}
 		case -1:{
-			final double r = Math.toRadians(view.objSel.get(0).r),
-					cr = Math.cos(r),
-					sr = Math.sin(r);
+			final FCObj first = view.objSel.first();
+			final double cr = first.getCos(),
+					sr = first.getSin();
 			wdy = wdy*cr;
 			wdx = -wdy*sr;
 			break;
@@ -86,12 +87,10 @@ public class CommandTranslate implements ActiveCommand{
 		double[] wdxy = getTranslation(mx,my);
 		double wdx = wdxy[0];
 		double wdy = wdxy[1];
-		HashSet<FCObj> hashSel = new HashSet<>(view.objSel);
-		for(FCObj obj:view.objDoc){
-			if(hashSel.contains(obj)){
-				obj.x += wdx;
-				obj.y += wdy;
-			}
+		for(FCObj obj:view.objSel){
+			obj.x += wdx;
+			obj.y += wdy;
+			view.objStore.update(obj);
 		}
 	}
 
@@ -111,7 +110,7 @@ public class CommandTranslate implements ActiveCommand{
 		g.translate(cx, cy);
 		g.scale(scale, scale);
 		g.translate(-view.anchorx, -view.anchory);
-		FCObj first = view.objSel.get(0);
+		FCObj first = view.objSel.first();
 		double ox = first.x;
 		double oy = first.y;
 		if(direction==0){
@@ -128,10 +127,9 @@ public class CommandTranslate implements ActiveCommand{
 					wdx=1;
 					wdy=0;
 				}else{
-					FCObj obj = view.objSel.get(0);
-					final double r = Math.toRadians(obj.r);
-					wdx = Math.cos(r);
-					wdy = Math.sin(r);
+					FCObj obj = first;
+					wdx = obj.getCos();
+					wdy = obj.getSin();
 				}
 			}else{
 				g.setColor(GraphicEditorPane.AXISY);
@@ -139,10 +137,9 @@ public class CommandTranslate implements ActiveCommand{
 					wdx=0;
 					wdy=1;
 				}else{
-					FCObj obj = view.objSel.get(0);
-					final double r = Math.toRadians(obj.r);
-					wdx = -Math.sin(r);
-					wdy = Math.cos(r);
+					FCObj obj = first;
+					wdx = -obj.getSin();
+					wdy = obj.getCos();
 				}
 			}
 			Main.console.println(wdx+" "+wdy);
@@ -0,0 +1,431 @@
+package core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Conversion between doubles and decimal text, used by FCML
+ * <br>
+ * Formatting gives the shortest decimal which parses back to exactly
+ * the same double, using the Schubfach algorithm by Raffaello Giulietti,
+ * and appends straight into a {@link StringBuilder}
+ * <br>
+ * Parsing turns an already scanned decimal significand and exponent
+ * into the correctly rounded double, using Clinger's fast path and
+ * then the Eisel-Lemire algorithm
+ * <br>
+ * Precision is never lost: anything formatted here parses back
+ * to the same bits
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class Decimals {
+	
+	//Disallow invoking constructor
+	private Decimals(){}
+	
+	/**
+	 * Decimal point position must be in (PLAIN_MIN, PLAIN_MAX] to be
+	 * written without an exponent
+	 */
+	public static final int PLAIN_MIN = -6, PLAIN_MAX = 21;
+	
+	private static final int P = 53;
+	private static final int Q_MIN = -1074;
+	private static final long C_MIN = 1L<<(P-1);
+	private static final long T_MASK = C_MIN-1;
+	private static final int BQ_MASK = 0x7ff;
+	private static final long MASK_63 = Long.MAX_VALUE;
+	private static final int K_MIN = -324, K_MAX = 292;
+	private static final int Q5_MIN = -342, Q5_MAX = 308;
+	
+	/**
+	 * Powers of 10 which fit in a long
+	 */
+	private static final long[] LONG_POW10 = new long[19];
+	/**
+	 * Exactly representable powers of 10
+	 */
+	private static final double[] DOUBLE_POW10 = new double[23];
+	
+	static{
+		long p = 1;
+		for(int i=0;i<LONG_POW10.length;i++){
+			LONG_POW10[i] = p;
+			p *= 10;
+		}
+		double d = 1;
+		for(int i=0;i<DOUBLE_POW10.length;i++){
+			DOUBLE_POW10[i] = d;
+			d *= 10;
+		}
+	}
+	
+	/**
+	 * Tables of 128 bit approximations of powers of 10, only built when first needed
+	 */
+	private static final class Tables{
+		/**
+		 * For Schubfach, g = floor(10^-k 2^-r) + 1 normalized to [2^125, 2^126),
+		 * split into the high and low 63 bits, index (k-K_MIN)*2
+		 */
+		static final long[] G = new long[(K_MAX-K_MIN+1)*2];
+		/**
+		 * For Eisel-Lemire, 5^q truncated to 128 bits with the top bit set,
+		 * split into the high and low 64 bits, index (q-Q5_MIN)*2
+		 */
+		static final long[] T = new long[(Q5_MAX-Q5_MIN+1)*2];
+		
+		static{
+			final BigInteger two63 = BigInteger.ONE.shiftLeft(63);
+			for(int k=K_MIN;k<=K_MAX;k++){
+				int e = -k;
+				int r = flog2pow10(e)-125;
+				BigInteger num = BigInteger.ONE, den = BigInteger.ONE;
+				if(e>=0)num = BigInteger.TEN.pow(e);
+				else den = BigInteger.TEN.pow(-e);
+				if(r<0)num = num.shiftLeft(-r);
+				else den = den.shiftLeft(r);
+				BigInteger g = num.divide(den).add(BigInteger.ONE);
+				int i = (k-K_MIN)*2;
+				G[i] = g.shiftRight(63).longValue();
+				G[i+1] = g.mod(two63).longValue();
+			}
+			for(int q=Q5_MIN;q<=Q5_MAX;q++){
+				BigInteger c;
+				if(q>=0){
+					c = BigInteger.valueOf(5).pow(q);
+					int bits = c.bitLength();
+					c = bits<128?c.shiftLeft(128-bits):c.shiftRight(bits-128);
+				}else{
+					BigInteger p5 = BigInteger.valueOf(5).pow(-q);
+					// Smallest z with 2^z >= 5^-q
+					int z = p5.bitLength();
+					int b = q>=-27?z+127:2*z+128;
+					c = BigInteger.ONE.shiftLeft(b).divide(p5).add(BigInteger.ONE);
+					int bits = c.bitLength();
+					if(bits>128)c = c.shiftRight(bits-128);
+				}
+				int i = (q-Q5_MIN)*2;
+				T[i] = c.shiftRight(64).longValue();
+				T[i+1] = c.longValue();
+			}
+		}
+	}
+	
+	/**
+	 * floor(q log10(2))
+	 */
+	private static int flog10pow2(int q){
+		return (int)(q*661_971_961_083L>>41);
+	}
+	
+	/**
+	 * floor(q log10(2) + log10(3/4))
+	 */
+	private static int flog10threeQuartersPow2(int q){
+		return (int)(q*661_971_961_083L-274_743_187_321L>>41);
+	}
+	
+	/**
+	 * floor(e log2(10))
+	 */
+	private static int flog2pow10(int e){
+		return (int)(e*913_124_641_741L>>38);
+	}
+	
+	/**
+	 * Format a double as the shortest decimal which parses back to it
+	 * 
+	 * @param v
+	 * @return
+	 */
+	public static String toString(double v){
+		return append(new StringBuilder(24),v).toString();
+	}
+	
+	/**
+	 * Append a double as the shortest decimal which parses back to it
+	 * <br>
+	 * Uses plain notation like 123.45 or 100 for most numbers, and
+	 * scientific notation like 1.5E-7 for very large or small ones
+	 * 
+	 * @param sb where to append
+	 * @param v
+	 * @return sb
+	 */
+	public static StringBuilder append(StringBuilder sb,double v){
+		long bits = Double.doubleToRawLongBits(v);
+		long t = bits&T_MASK;
+		int bq = (int)(bits>>>(P-1))&BQ_MASK;
+		if(bq==BQ_MASK){
+			return sb.append(t!=0?"NaN":bits>0?"Infinity":"-Infinity");
+		}
+		if(bits<0)sb.append('-');
+		if(bq==0){
+			if(t==0)return sb.append('0');
+			// Subnormals never show up in levels, let the standard library handle them
+			String s = Double.toString(Math.abs(v));
+			return sb.append(s);
+		}
+		int mq = -Q_MIN+1-bq;
+		long c = C_MIN|t;
+		if(0<mq&&mq<P){
+			// Integer values are exact already
+			long f = c>>mq;
+			if(f<<mq==c){
+				return appendDecimal(sb,f,0);
+			}
+		}
+		return toDecimal(sb,-mq,c);
+	}
+	
+	private static StringBuilder toDecimal(StringBuilder sb,int q,long c){
+		int out = (int)c&1;
+		long cb = c<<2;
+		long cbr = cb+2;
+		long cbl;
+		int k;
+		if(c!=C_MIN|q==Q_MIN){
+			cbl = cb-2;
+			k = flog10pow2(q);
+		}else{
+			cbl = cb-1;
+			k = flog10threeQuartersPow2(q);
+		}
+		int h = q+flog2pow10(-k)+2;
+		final long[] g = Tables.G;
+		int gi = (k-K_MIN)*2;
+		long g1 = g[gi];
+		long g0 = g[gi+1];
+		long vb = rop(g1,g0,cb<<h);
+		long vbl = rop(g1,g0,cbl<<h);
+		long vbr = rop(g1,g0,cbr<<h);
+		long s = vb>>2;
+		if(s>=100){
+			// Try one digit less, sp10 = floor(s/10)*10
+			long sp10 = 10*Math.multiplyHigh(s,115_292_150_460_684_698L<<4);
+			long tp10 = sp10+10;
+			boolean upin = vbl+out<=sp10<<2;
+			boolean wpin = (tp10<<2)+out<=vbr;
+			if(upin!=wpin){
+				return appendDecimal(sb,upin?sp10:tp10,k);
+			}
+		}
+		long tt = s+1;
+		boolean uin = vbl+out<=s<<2;
+		boolean win = (tt<<2)+out<=vbr;
+		if(uin!=win){
+			return appendDecimal(sb,uin?s:tt,k);
+		}
+		// Both are in range, pick the closer one
+		long cmp = vb-(s+tt<<1);
+		return appendDecimal(sb,cmp<0||cmp==0&&(s&1)==0?s:tt,k);
+	}
+	
+	private static long rop(long g1,long g0,long cp){
+		long x1 = Math.multiplyHigh(g0,cp);
+		long y0 = g1*cp;
+		long y1 = Math.multiplyHigh(g1,cp);
+		long z = (y0>>>1)+x1;
+		long vbp = y1+(z>>>63);
+		return vbp|(z&MASK_63)+MASK_63>>>63;
+	}
+	
+	/**
+	 * Number of decimal digits in a positive long
+	 */
+	private static int digitCount(long f){
+		int n = flog10pow2(64-Long.numberOfLeadingZeros(f));
+		return n<LONG_POW10.length&&f>=LONG_POW10[n]?n+1:n;
+	}
+	
+	/**
+	 * Append zeros then f, so that exactly n digits are written
+	 */
+	private static void appendPadded(StringBuilder sb,long f,int n){
+		for(int i=f==0?1:digitCount(f);i<n;i++){
+			sb.append('0');
+		}
+		sb.append(f);
+	}
+	
+	/**
+	 * Append f*10^e where f is positive
+	 */
+	private static StringBuilder appendDecimal(StringBuilder sb,long f,int e){
+		// Schubfach gives up to 17 digits, so strip zeros in big steps first,
+		// after the loop there are at most 7 left
+		while(f%100_000_000==0){
+			f /= 100_000_000;
+			e += 8;
+		}
+		if(f%10_000==0){
+			f /= 10_000;
+			e += 4;
+		}
+		if(f%100==0){
+			f /= 100;
+			e += 2;
+		}
+		if(f%10==0){
+			f /= 10;
+			e++;
+		}
+		int n = digitCount(f);
+		// Digits before the decimal point
+		int point = n+e;
+		if(point>PLAIN_MIN&&point<=PLAIN_MAX){
+			if(e>=0){
+				sb.append(f);
+				for(int i=0;i<e;i++){
+					sb.append('0');
+				}
+			}else if(point>0){
+				long div = LONG_POW10[-e];
+				sb.append(f/div);
+				sb.append('.');
+				appendPadded(sb,f%div,-e);
+			}else{
+				sb.append("0.");
+				appendPadded(sb,f,-e);
+			}
+		}else{
+			long div = LONG_POW10[n-1];
+			sb.append(f/div);
+			if(n>1){
+				sb.append('.');
+				appendPadded(sb,f%div,n-1);
+			}
+			sb.append('E');
+			sb.append(point-1);
+		}
+		return sb;
+	}
+	
+	/**
+	 * Compute the double closest to w*10^q, where w is read as unsigned
+	 * <br>
+	 * Covers every case that comes up in practice, but for extreme
+	 * exponents or results which would be subnormal it gives up
+	 * 
+	 * @param w decimal significand, at most 19 digits, unsigned
+	 * @param q decimal exponent
+	 * @param negative if true, the result is negated
+	 * @return the correctly rounded value, or NaN if it couldn't be done
+	 */
+	public static double toDouble(long w,int q,boolean negative){
+		if(w==0)return negative?-0d:0d;
+		// Clinger's fast path, both values and the result are exact or correctly rounded
+		if(w>0&&w<=(1L<<P)&&q>=-22&&q<=22){
+			double d = w;
+			d = q<0?d/DOUBLE_POW10[-q]:d*DOUBLE_POW10[q];
+			return negative?-d:d;
+		}
+		if(q<Q5_MIN||q>Q5_MAX)return Double.NaN;
+		// Eisel-Lemire
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		final long[] t = Tables.T;
+		int ti = (q-Q5_MIN)*2;
+		long high = unsignedMultiplyHigh(w,t[ti]);
+		long low = w*t[ti];
+		if((high&0x1ff)==0x1ff){
+			long high2 = unsignedMultiplyHigh(w,t[ti+1]);
+			low += high2;
+			if(Long.compareUnsigned(high2,low)>0)high++;
+		}
+		int upperbit = (int)(high>>>63);
+		int shift = upperbit+64-(P-1)-3;
+		long mantissa = high>>>shift;
+		int power2 = ((152170+65536)*q>>16)+63+upperbit-lz+1023;
+		if(power2<=0)return Double.NaN;
+		if(Long.compareUnsigned(low,1)<=0&&q>=-4&&q<=23&&(mantissa&3)==1){
+			// Exactly halfway, round to even
+			if(mantissa<<shift==high)mantissa &= ~1L;
+		}
+		mantissa += mantissa&1;
+		mantissa >>>= 1;
+		if(mantissa>=(2L<<(P-1))){
+			mantissa = 1L<<(P-1);
+			power2++;
+		}
+		mantissa &= ~(1L<<(P-1));
+		if(power2>=BQ_MASK){
+			return negative?Double.NEGATIVE_INFINITY:Double.POSITIVE_INFINITY;
+		}
+		double d = Double.longBitsToDouble(mantissa|(long)power2<<(P-1));
+		return negative?-d:d;
+	}
+	
+	private static long unsignedMultiplyHigh(long a,long b){
+		return Math.multiplyHigh(a,b)+((a>>63)&b)+((b>>63)&a);
+	}
+	
+	/**
+	 * Main method, used only for testing
+	 * 
+	 * @param args ignored
+	 */
+	public static void main(String[] args){
+		System.out.println("--- Formatting ---");
+		System.out.println("0.1+0.2="+toString(0.1+0.2)+" (expected 0.30000000000000004)");
+		System.out.println("100="+toString(100)+", -0.5="+toString(-0.5)+", 123.45="+toString(123.45)+" (expected 100, -0.5, 123.45)");
+		System.out.println("1e-7="+toString(1e-7)+", 2e23="+toString(2e23)+", 1e20="+toString(1e20)+" (expected 1E-7, 2E23, 100000000000000000000)");
+		System.out.println("max="+toString(Double.MAX_VALUE)+" (expected 1.7976931348623157E308)");
+		System.out.println("--- Parsing ---");
+		System.out.println("3*10^-1="+toDouble(3,-1,false)+" (expected 0.3)");
+		System.out.println("30000000000000004*10^-17="+toDouble(30000000000000004L,-17,false)+" (expected 0.30000000000000004)");
+		System.out.println("17976931348623157*10^292="+toDouble(17976931348623157L,292,false)+" (expected 1.7976931348623157E308)");
+		System.out.println("--- Formatting against Double.toString ---");
+		Random random = new Random();
+		double[] fixed = {0, -0d, 0.5, 0.1, -0.3, 0.03, 1e-6, 1e-7, 1e20, 1e21, 1e22, 1e23, 2e23, 5e-324,
+				Double.MIN_NORMAL, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for(double v:fixed){
+			checkFormat(v);
+		}
+		final int count = 1_000_000;
+		for(int i=0;i<count;i++){
+			// Any bits at all, then numbers like the ones typed into levels
+			checkFormat(Double.longBitsToDouble(random.nextLong()));
+			checkFormat((random.nextInt(2_000_001)-1_000_000)/DOUBLE_POW10[random.nextInt(9)]);
+		}
+		System.out.println((fixed.length+count*2)+" values match");
+	}
+	
+	/**
+	 * Check that a double formats to the same value as {@link Double#toString(double)}
+	 * with no trailing zeros, throws if it doesn't
+	 * <br>
+	 * Before Java 19 that sometimes has a digit more than needed or
+	 * isn't the closest, then a shorter or closer result which still
+	 * parses back is also accepted
+	 * 
+	 * @param v
+	 */
+	private static void checkFormat(double v){
+		String s = toString(v), expected = Double.toString(v);
+		boolean ok;
+		if(Double.isFinite(v)){
+			BigDecimal got = new BigDecimal(s), want = new BigDecimal(expected);
+			String significand = s.indexOf('E')<0?s:s.substring(0, s.indexOf('E'));
+			ok = Double.doubleToRawLongBits(Double.parseDouble(s))==Double.doubleToRawLongBits(v)
+					&&!(significand.indexOf('.')>=0&&significand.endsWith("0"))
+					&&(got.compareTo(want)==0||isBetter(got, want, new BigDecimal(v)));
+		}else{
+			ok = s.equals(expected);
+		}
+		if(!ok)throw new AssertionError("Formatted "+expected+" as "+s);
+	}
+	
+	/**
+	 * Does a have fewer digits than b, or as many and is closer to exact?
+	 */
+	private static boolean isBetter(BigDecimal a,BigDecimal b,BigDecimal exact){
+		int pa = a.stripTrailingZeros().precision(), pb = b.stripTrailingZeros().precision();
+		return pa<pb||pa==pb&&a.subtract(exact).abs().compareTo(b.subtract(exact).abs())<0;
+	}
+	
+}
@@ -0,0 +1,191 @@
+package core;
+
+/**
+ * Parses single FC objects from FCML text without throwing
+ * <br>
+ * If a line isn't an object, the parser keeps an error code and
+ * the column where it went wrong instead of building an exception,
+ * so invalid lines (comments, half typed lines) cost nothing extra
+ * <br>
+ * Not thread safe, but cheap to make, so use one per thread
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class FCMLParser {
+	
+	/**
+	 * No error, the last parse succeeded
+	 */
+	public static final int OK = 0;
+	/**
+	 * The type name is not recognized
+	 */
+	public static final int ERROR_TYPE = 1;
+	/**
+	 * An index was given to something which is not a design piece
+	 */
+	public static final int ERROR_INDEX_NOT_DESIGN = 2;
+	/**
+	 * The index is negative
+	 */
+	public static final int ERROR_INDEX_NEGATIVE = 3;
+	/**
+	 * More than one index was given
+	 */
+	public static final int ERROR_INDEX_MULTIPLE = 4;
+	/**
+	 * Not enough values, needs at least x, y and width
+	 */
+	public static final int ERROR_MISSING = 5;
+	/**
+	 * A value which should be a number is not
+	 */
+	public static final int ERROR_NUMBER = 6;
+	/**
+	 * Circle with different width and height
+	 */
+	public static final int ERROR_CIRCLE = 7;
+	/**
+	 * Rotation on a type which cannot be rotated
+	 */
+	public static final int ERROR_ROTATION = 8;
+	/**
+	 * Joints on something which is not a design piece
+	 */
+	public static final int ERROR_JOINTS = 9;
+	
+	private static final String[] MESSAGES = {
+			"No error",
+			"FC object type not recognized",
+			"Only designs can have an index",
+			"Index cannot be negative",
+			"Can only have one index.",
+			"Need at least x, y and width",
+			"Not a number",
+			"This type is a circle, so the width and height (diameter) must be the same",
+			"This type cannot be rotated",
+			"This type is not a design piece, so it cannot be jointed"
+	};
+	
+	/**
+	 * Scanner used for tokens
+	 */
+	public final FCMLScanner scanner = new FCMLScanner();
+	/**
+	 * Error code from the last parse, <i>OK</i> if it succeeded
+	 */
+	public int error;
+	/**
+	 * Where the error happened, counted from the start of the line
+	 */
+	public int column;
+	
+	/**
+	 * Parse a single object
+	 * 
+	 * @param text
+	 * @param start where the object starts, inclusive
+	 * @param end where the object ends, exclusive
+	 * @return the object, or null if it isn't one, in which case
+	 * <i>error</i> and <i>column</i> say why
+	 */
+	public FCObj parse(CharSequence text,int start,int end){
+		FCObj obj = new FCObj();
+		return parseInto(obj,text,start,end)?obj:null;
+	}
+	
+	/**
+	 * Parse a single object, setting the fields of an existing object
+	 * <br>
+	 * If it fails, the object may be partially changed
+	 * 
+	 * @param obj object to set
+	 * @param text
+	 * @param start where the object starts, inclusive
+	 * @param end where the object ends, exclusive
+	 * @return true if it succeeded, otherwise <i>error</i> and
+	 * <i>column</i> say why
+	 */
+	public boolean parseInto(FCObj obj,CharSequence text,int start,int end){
+		final FCMLScanner scanner = this.scanner.reset(text, start, end);
+		// A leading delimiter would be an empty type name
+		if(start>=end||FCMLScanner.isDelimiter(text.charAt(start))||!scanner.next())return fail(ERROR_TYPE,start,start);
+		int ts = scanner.tokenStart, te = scanner.tokenEnd;
+		// Trailing # are dropped, like split does
+		while(te>ts&&text.charAt(te-1)=='#')te--;
+		int hash = FCMLScanner.indexOf(text, '#', ts, te);
+		int alias = FCType.lookupAlias(text, ts, hash<0?te:hash);
+		if(alias<0)return fail(ERROR_TYPE,start,ts);
+		obj.type = FCType.getAlias(alias);
+		obj.typeId = FCType.getAliasType(alias);
+		final int typeData = obj.typeData = FCType.getData(obj.typeId);
+		obj.z = -1;
+		if(Bits.readBit(typeData, FCObj.TYPE_UNROTATABLE))obj.z=-2;
+		if(Bits.readBit(typeData, FCObj.TYPE_DESIGN))obj.z=0;
+		if(hash>=0){
+			if(FCMLScanner.indexOf(text, '#', hash+1, te)>=0)return fail(ERROR_INDEX_MULTIPLE,start,hash);
+			if(!Bits.readBit(typeData,FCObj.TYPE_DESIGN))return fail(ERROR_INDEX_NOT_DESIGN,start,hash);
+			if(!scanner.readInt(hash+1, te))return fail(ERROR_NUMBER,start,hash+1);
+			if(scanner.intValue<0)return fail(ERROR_INDEX_NEGATIVE,start,hash+1);
+			obj.z = scanner.intValue;
+		}
+		if(!scanner.next())return fail(ERROR_MISSING,start,end);
+		if(!scanner.readDouble())return fail(ERROR_NUMBER,start,scanner.tokenStart);
+		obj.x = scanner.doubleValue;
+		if(!scanner.next())return fail(ERROR_MISSING,start,end);
+		if(!scanner.readDouble())return fail(ERROR_NUMBER,start,scanner.tokenStart);
+		obj.y = scanner.doubleValue;
+		if(!scanner.next())return fail(ERROR_MISSING,start,end);
+		if(!scanner.readDouble())return fail(ERROR_NUMBER,start,scanner.tokenStart);
+		obj.w = obj.h = scanner.doubleValue;
+		int hstart = end;
+		if(scanner.next()){
+			hstart = scanner.tokenStart;
+			if(!scanner.readDouble())return fail(ERROR_NUMBER,start,hstart);
+			obj.h = scanner.doubleValue;
+		}
+		if(Bits.readBit(typeData,FCObj.TYPE_CIRCLE)&&!Floats.isNear(obj.w, obj.h))return fail(ERROR_CIRCLE,start,hstart);
+		obj.r = 0;
+		if(scanner.next()){
+			if(!scanner.readDouble())return fail(ERROR_NUMBER,start,scanner.tokenStart);
+			obj.r = scanner.doubleValue;
+			if(Bits.readBit(typeData,FCObj.TYPE_UNROTATABLE)&&!Floats.isNear(obj.r, 0))return fail(ERROR_ROTATION,start,scanner.tokenStart);
+		}
+		obj.joints.clear();
+		while(scanner.next()){
+			if(!Bits.readBit(typeData,FCObj.TYPE_DESIGN))return fail(ERROR_JOINTS,start,scanner.tokenStart);
+			if(!scanner.readInt())return fail(ERROR_NUMBER,start,scanner.tokenStart);
+			obj.joints.add(scanner.intValue);
+		}
+		error = OK;
+		column = 0;
+		return true;
+	}
+	
+	private boolean fail(int error,int start,int at){
+		this.error = error;
+		column = at-start;
+		return false;
+	}
+	
+	/**
+	 * Get a readable message for an error code
+	 * 
+	 * @param error
+	 * @return
+	 */
+	public static String getMessage(int error){
+		return error>=0&&error<MESSAGES.length?MESSAGES[error]:"Unknown error";
+	}
+	
+	/**
+	 * Get a readable message for the last error
+	 * 
+	 * @return
+	 */
+	public String getMessage(){
+		return getMessage(error)+" (column "+column+")";
+	}
+	
+}
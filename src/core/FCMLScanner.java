@@ -0,0 +1,323 @@
+package core;
+
+/**
+ * Hand-written tokenizer for FCML text
+ * <br>
+ * Works directly on a range of a {@link CharSequence}, so no regex
+ * is compiled and no {@link String} is made per token
+ * <br>
+ * Delimiters are the same as for the old <i>split("[\\s(),\\[\\]]+")</i>,
+ * which is whitespace, parentheses, commas and square brackets
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class FCMLScanner {
+	
+	/**
+	 * Text being scanned
+	 */
+	public CharSequence text;
+	/**
+	 * Current position
+	 */
+	public int pos;
+	/**
+	 * Where to stop scanning, exclusive
+	 */
+	public int end;
+	/**
+	 * Start of the last token found, inclusive
+	 */
+	public int tokenStart;
+	/**
+	 * End of the last token found, exclusive
+	 */
+	public int tokenEnd;
+	/**
+	 * Last integer read
+	 */
+	public int intValue;
+	/**
+	 * Last number read
+	 */
+	public double doubleValue;
+	
+	/**
+	 * Start scanning a new range
+	 * 
+	 * @param text text to scan
+	 * @param start where to start, inclusive
+	 * @param end where to stop, exclusive
+	 * @return this object
+	 */
+	public FCMLScanner reset(CharSequence text,int start,int end){
+		this.text = text;
+		this.end = end;
+		pos = tokenStart = tokenEnd = start;
+		return this;
+	}
+	
+	/**
+	 * Find the next token, which is then between
+	 * <i>tokenStart</i> and <i>tokenEnd</i>
+	 * 
+	 * @return true if a token was found, false if there are none left
+	 */
+	public boolean next(){
+		final CharSequence text = this.text;
+		final int end = this.end;
+		int pos = this.pos;
+		while(pos<end&&isDelimiter(text.charAt(pos)))pos++;
+		if(pos>=end){
+			this.pos = pos;
+			return false;
+		}
+		tokenStart = pos;
+		while(pos<end&&!isDelimiter(text.charAt(pos)))pos++;
+		tokenEnd = this.pos = pos;
+		return true;
+	}
+	
+	/**
+	 * Is this character ignored by the parser?
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public static boolean isDelimiter(char c){
+		switch(c){
+		case ' ':case '\t':case '\n':case '\u000B':case '\f':case '\r':
+		case '(':case ')':case ',':case '[':case ']':
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Find a character in a range
+	 * 
+	 * @param text
+	 * @param c character to look for
+	 * @param start inclusive
+	 * @param end exclusive
+	 * @return index of the character, or -1 if not found
+	 */
+	public static int indexOf(CharSequence text,char c,int start,int end){
+		for(int i=start;i<end;i++){
+			if(text.charAt(i)==c)return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Read an integer the same way as {@link Integer#parseInt(String)},
+	 * but without throwing if it isn't one
+	 * <br>
+	 * On success the value is put in <i>intValue</i>
+	 * 
+	 * @param start inclusive
+	 * @param end exclusive
+	 * @return true if it is an integer
+	 */
+	public boolean readInt(int start,int end){
+		final CharSequence text = this.text;
+		int i = start;
+		boolean neg = false;
+		if(i<end){
+			char c = text.charAt(i);
+			if(c=='-'){
+				neg = true;
+				i++;
+			}else if(c=='+'){
+				i++;
+			}
+		}
+		if(i>=end)return false;
+		// Accumulate negative so MIN_VALUE fits
+		int result = 0;
+		for(;i<end;i++){
+			char c = text.charAt(i);
+			int d = c>='0'&&c<='9'?c-'0':Character.digit(c, 10);
+			if(d<0||result<(Integer.MIN_VALUE+d)/10)return false;
+			result = result*10-d;
+		}
+		if(!neg){
+			if(result==Integer.MIN_VALUE)return false;
+			result = -result;
+		}
+		intValue = result;
+		return true;
+	}
+	
+	/**
+	 * Read the current token as an integer
+	 * 
+	 * @return true if it is an integer
+	 * @see #readInt(int, int)
+	 */
+	public boolean readInt(){
+		return readInt(tokenStart,tokenEnd);
+	}
+	
+	/**
+	 * Read a number the same way as {@link Double#parseDouble(String)},
+	 * but without throwing if it isn't one
+	 * <br>
+	 * Plain decimals with at most 19 significant digits are converted
+	 * by {@link Decimals}, only unusual numbers need a {@link String}
+	 * <br>
+	 * On success the value is put in <i>doubleValue</i>
+	 * 
+	 * @param start inclusive
+	 * @param end exclusive
+	 * @return true if it is a number
+	 */
+	public boolean readDouble(int start,int end){
+		final CharSequence text = this.text;
+		int i = start;
+		boolean neg = false;
+		if(i<end){
+			char c = text.charAt(i);
+			if(c=='-'){
+				neg = true;
+				i++;
+			}else if(c=='+'){
+				i++;
+			}
+		}
+		long mantissa = 0;
+		int digits = 0;// Significant digits
+		int exp = 0;
+		boolean any = false;
+		boolean fast = true;
+		boolean dot = false;
+		for(;i<end;i++){
+			char c = text.charAt(i);
+			if(c>='0'&&c<='9'){
+				any = true;
+				if(mantissa!=0||c!='0'){
+					if(++digits>19){
+						fast = false;
+						break;
+					}
+					mantissa = mantissa*10+(c-'0');
+				}
+				if(dot)exp--;
+			}else if(c=='.'&&!dot){
+				dot = true;
+			}else{
+				break;
+			}
+		}
+		if(fast&&i<end){
+			char c = text.charAt(i);
+			if(any&&(c=='e'||c=='E')&&++i<end){
+				boolean eneg = false;
+				c = text.charAt(i);
+				if(c=='-'){
+					eneg = true;
+					i++;
+				}else if(c=='+'){
+					i++;
+				}
+				int e = 0;
+				boolean eany = false;
+				for(;i<end;i++){
+					int d = text.charAt(i)-'0';
+					if(d<0||d>9||e>1000)break;
+					e = e*10+d;
+					eany = true;
+				}
+				fast = eany&&i==end;
+				exp += eneg?-e:e;
+			}else{
+				fast = false;
+			}
+		}
+		if(fast&&any){
+			double result = Decimals.toDouble(mantissa, exp, neg);
+			if(result==result){// Not NaN
+				doubleValue = result;
+				return true;
+			}
+		}
+		if(!isJavaDouble(text,start,end))return false;
+		doubleValue = Double.parseDouble(text.subSequence(start, end).toString());
+		return true;
+	}
+	
+	/**
+	 * Read the current token as a number
+	 * 
+	 * @return true if it is a number
+	 * @see #readDouble(int, int)
+	 */
+	public boolean readDouble(){
+		return readDouble(tokenStart,tokenEnd);
+	}
+	
+	/**
+	 * Would {@link Double#parseDouble(String)} accept this?
+	 * <br>
+	 * Checks the full grammar, including NaN, Infinity,
+	 * hexadecimal and type suffixes
+	 * 
+	 * @param text
+	 * @param start inclusive
+	 * @param end exclusive
+	 * @return
+	 */
+	public static boolean isJavaDouble(CharSequence text,int start,int end){
+		// Same trim as the standard library
+		while(start<end&&text.charAt(start)<=' ')start++;
+		while(end>start&&text.charAt(end-1)<=' ')end--;
+		if(start<end&&(text.charAt(start)=='+'||text.charAt(start)=='-'))start++;
+		if(start>=end)return false;
+		if(regionIs(text,start,end,"NaN")||regionIs(text,start,end,"Infinity"))return true;
+		char c = text.charAt(end-1);
+		if(c=='f'||c=='F'||c=='d'||c=='D')end--;
+		boolean hex = end-start>=2&&text.charAt(start)=='0'&&(text.charAt(start+1)|0x20)=='x';
+		if(hex)start+=2;
+		int digits = 0;
+		boolean dot = false;
+		for(;start<end;start++){
+			c = text.charAt(start);
+			if(c>='0'&&c<='9'||hex&&(c|0x20)>='a'&&(c|0x20)<='f'){
+				digits++;
+			}else if(c=='.'&&!dot){
+				dot = true;
+			}else{
+				break;
+			}
+		}
+		if(digits==0)return false;
+		if(start<end){
+			if((text.charAt(start)|0x20)!=(hex?'p':'e'))return false;
+			start++;
+		}else{
+			// Binary exponent is required
+			return !hex;
+		}
+		if(start<end&&(text.charAt(start)=='+'||text.charAt(start)=='-'))start++;
+		if(start>=end)return false;
+		for(;start<end;start++){
+			c = text.charAt(start);
+			if(c<'0'||c>'9')return false;
+		}
+		return true;
+	}
+	
+	private static boolean regionIs(CharSequence text,int start,int end,String s){
+		return end-start==s.length()&&regionEquals(s,text,start);
+	}
+	
+	private static boolean regionEquals(String name,CharSequence text,int start){
+		for(int i=0,n=name.length();i<n;i++){
+			if(name.charAt(i)!=text.charAt(start+i))return false;
+		}
+		return true;
+	}
+	
+}
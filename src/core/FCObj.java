@@ -24,14 +24,6 @@ public class FCObj {
 		
 	};
 	
-	/**
-	 * Translates an object name to a standard type
-	 */
-	public static final HashMap<String,Integer> nameToType = new HashMap<>();
-	/**
-	 * Translates a standard type to an object name
-	 */
-	public static final HashMap<Integer,String> typeToName = new HashMap<>();
 	/**
 	 * Use this bit to test if a type is a circle or a rectangle
 	 */
@@ -74,93 +66,143 @@ public class FCObj {
 	public static final int TYPE_NOSELFCOLLIDE = 9;
 	
 	/**
-	 * Quickly add a pair
+	 * Get the type data (flags) without any lookup
 	 * 
-	 * @param name
-	 * @param type
+	 * @return
 	 */
-	public static void addNameType(String name,int type){
-		nameToType.put(name, type);
-		typeToName.put(type, name);
+	public int getTypeData(){
+		return typeData;
 	}
+	
+	private void updateTrig(){
+		final double r = this.r;
+		if(r!=trigR){
+			final double rad = Math.toRadians(r);
+			cos = Math.cos(rad);
+			sin = Math.sin(rad);
+			trigR = r;
+		}
+	}
+	
 	/**
-	 * Quickly add a pair
+	 * Get the cosine of the rotation, only computed again
+	 * after the rotation changes
+	 * <br>
+	 * Not safe to call from several threads at once
 	 * 
-	 * @param name
-	 * @param baseType original type
-	 * @param ts flags to toggle
+	 * @return
 	 */
-	public static void addNameTypeBits(String name,int baseType,int...ts){
-		for(int i:ts){
-			baseType^=(1<<i);
-		}
-		addNameType(name,baseType);
+	public double getCos(){
+		updateTrig();
+		return cos;
 	}
+	
 	/**
-	 * Add other names which are identical to some name
+	 * Get the sine of the rotation, only computed again
+	 * after the rotation changes
+	 * <br>
+	 * Not safe to call from several threads at once
 	 * 
-	 * @param to the reference name
-	 * @param from
+	 * @return
+	 */
+	public double getSin(){
+		updateTrig();
+		return sin;
+	}
+	
+	/**
+	 * @return half the width, never negative
+	 */
+	public double getHalfWidth(){
+		return Math.abs(w*0.5);
+	}
+	
+	/**
+	 * @return half the height, never negative
 	 */
-	public static void addAlias(String to,String...from){
-		int typeData = nameToType.get(to);
-		for(String v:from){
-			nameToType.put(v, typeData);
+	public double getHalfHeight(){
+		return Math.abs(h*0.5);
+	}
+	
+	private void updateBounds(){
+		if(x==boundsX&&y==boundsY&&w==boundsW&&h==boundsH&&r==boundsR&&typeData==boundsTypeData)return;
+		final double hw = getHalfWidth(), hh = getHalfHeight();
+		double ex = hw, ey = hw;
+		if(!Bits.readBit(typeData, TYPE_CIRCLE)){
+			final double cr = Math.abs(getCos()),
+					sr = Math.abs(getSin());
+			ex = hw*cr+hh*sr;
+			ey = hw*sr+hh*cr;
 		}
+		minx = x-ex;
+		miny = y-ey;
+		maxx = x+ex;
+		maxy = y+ey;
+		boundsX = x;
+		boundsY = y;
+		boundsW = w;
+		boundsH = h;
+		boundsR = r;
+		boundsTypeData = typeData;
 	}
 	
 	/**
-	 * Add both rectangle and circle for type
+	 * Get the left side of the axis aligned bounding box,
+	 * only computed again after the shape changes
+	 * <br>
+	 * Not safe to call from several threads at once
 	 * 
-	 * @param name
-	 * @param baseType
-	 * @param ts
+	 * @return
 	 */
-	public static void addNameTypeBitsPair(String name,int baseType,int...ts){
-		for(int i:ts){
-			baseType^=(1<<i);
-		}
-		addNameType(name+"Rect",baseType);
-		baseType^=(1<<TYPE_CIRCLE);
-		addNameType(name+"Circle",baseType);
+	public double getMinX(){
+		updateBounds();
+		return minx;
 	}
 	
-	static{
-		// Add special
-		addNameTypeBits("Empty",0);
-		// Add nonstandard and standalone aliases first
-		addNameTypeBits("UnpowGoalCircle",0,TYPE_MOVABLE,TYPE_GOAL,TYPE_DESIGN,TYPE_JOINTABLE,TYPE_CIRCLE);
-		addNameTypeBits("CWGoalCircle",0,TYPE_MOVABLE,TYPE_GOAL,TYPE_DESIGN,TYPE_JOINTABLE,TYPE_CIRCLE,TYPE_POWERED,TYPE_CLOCKWISE);
-		addNameTypeBits("CCWGoalCircle",0,TYPE_MOVABLE,TYPE_GOAL,TYPE_DESIGN,TYPE_JOINTABLE,TYPE_CIRCLE,TYPE_POWERED);
-		// Add standard types next
-		addNameTypeBits("BuildArea",0,TYPE_UNROTATABLE);
-		addNameTypeBits("GoalArea",0,TYPE_UNROTATABLE,TYPE_GOAL);
-		addNameTypeBitsPair("Static",0,TYPE_COLLIDES);
-		addNameTypeBitsPair("Dynamic",0,TYPE_COLLIDES,TYPE_MOVABLE);
-		addNameTypeBitsPair("Goal",0,TYPE_MOVABLE,TYPE_GOAL,TYPE_DESIGN,TYPE_JOINTABLE);
-		addNameTypeBits("UnpowWheel",0,TYPE_MOVABLE,TYPE_DESIGN,TYPE_JOINTABLE,TYPE_CIRCLE);
-		addNameTypeBits("CWWheel",0,TYPE_MOVABLE,TYPE_DESIGN,TYPE_JOINTABLE,TYPE_CIRCLE,TYPE_POWERED,TYPE_CLOCKWISE);
-		addNameTypeBits("CCWWheel",0,TYPE_MOVABLE,TYPE_DESIGN,TYPE_JOINTABLE,TYPE_CIRCLE,TYPE_POWERED);
-		addNameTypeBits("WaterRod",0,TYPE_MOVABLE,TYPE_DESIGN,TYPE_JOINTABLE,TYPE_NOSELFCOLLIDE);
-		addNameTypeBits("WoodRod",0,TYPE_MOVABLE,TYPE_DESIGN,TYPE_JOINTABLE);
-		// Add separate aliases after
-		addAlias("BuildArea","BA","Build");
-		addAlias("GoalArea","GA","Goal");
-		addAlias("StaticRect","SR");
-		addAlias("StaticCircle","SC");
-		addAlias("GoalRect","GR");
-		addAlias("GoalCircle","GC","GP","UG");
-		addAlias("UnpowWheel","UW","Unpowered");
-		addAlias("CWWheel","WW","Clockwise");
-		addAlias("CCWWheel","CW","Counterclockwise");
-		addAlias("CWGoalCircle","WG");
-		addAlias("CCWGoalCircle","CG");
-		addAlias("WaterRod","BR","Water");
-		addAlias("WoodRod","WR","Wood");
+	/**
+	 * Get the top side of the axis aligned bounding box
+	 * 
+	 * @return
+	 * @see #getMinX()
+	 */
+	public double getMinY(){
+		updateBounds();
+		return miny;
 	}
 	
-	public int getTypeData(){
-		return nameToType.get(type);
+	/**
+	 * Get the right side of the axis aligned bounding box
+	 * 
+	 * @return
+	 * @see #getMinX()
+	 */
+	public double getMaxX(){
+		updateBounds();
+		return maxx;
+	}
+	
+	/**
+	 * Get the bottom side of the axis aligned bounding box
+	 * 
+	 * @return
+	 * @see #getMinX()
+	 */
+	public double getMaxY(){
+		updateBounds();
+		return maxy;
+	}
+	
+	/**
+	 * Set the type by name, resolving it in {@link FCType}
+	 * 
+	 * @param type name of the type, aliases are allowed
+	 */
+	public void setType(String type){
+		int id = FCType.lookup(type);
+		if(id<0)throw new IllegalArgumentException("FC object type \""+type+"\" not known");
+		this.type = type;
+		typeId = id;
+		typeData = FCType.getData(id);
 	}
 	
 	/**
@@ -171,16 +213,39 @@ public class FCObj {
 	public int z=-1;
 	/**
 	 * Base type (name)
+	 * <br>
+	 * Use <i>setType</i> to change it, so the id and data are kept up to date
 	 */
 	public String type;
+	/**
+	 * Type id in {@link FCType}, resolved from the name
+	 */
+	public int typeId = FCType.EMPTY;
+	/**
+	 * Type data (flags), resolved from the name
+	 */
+	public int typeData;
 	/**
 	 * Center (x,y), dimensions (w,h), rotation degrees (r)
 	 */
 	public double x,y,w,h,r;
+	/**
+	 * Slot id in the {@link ObjectStore} holding this object, -1 if none
+	 * <br>
+	 * Belongs to this instance, so copies don't get it
+	 */
+	public int id = -1;
 	/**
 	 * If another object's z value is in this list, then they are connected
 	 */
-	public ArrayList<Integer> joints = new ArrayList<>();
+	public IntList joints = new IntList();
+	
+	// Derived geometry, each part is remembered along with the
+	// values it came from and recomputed when they change
+	private double trigR = Double.NaN, cos = 1, sin = 0;
+	private double boundsX = Double.NaN, boundsY, boundsW, boundsH, boundsR;
+	private int boundsTypeData;
+	private double minx, miny, maxx, maxy;
 	
 	/**
 	 * Default constructor, does nothing
@@ -207,34 +272,7 @@ public class FCObj {
 	public FCObj(String text,String format){
 		switch(format){
 		case "fcml":{
-			String[] tokens = text.split("[\\s(),\\[\\]]+");
-			int ntokens = tokens.length;
-			String[] typeBits = tokens[0].split("#");
-			type = typeBits[0];
-			if(!nameToType.containsKey(type))throw new IllegalArgumentException(text+"\nFC object type \""+type+"\" not recognized");
-			int typeData = nameToType.get(type);
-			if(Bits.readBit(typeData, TYPE_UNROTATABLE))z=-2;
-			if(Bits.readBit(typeData, TYPE_DESIGN))z=0;
-			if(typeBits.length==2){
-				if(!Bits.readBit(typeData,TYPE_DESIGN))throw new IllegalArgumentException(text+"\nOnly designs can have an index");
-				z = Integer.parseInt(typeBits[1]);
-				if(z<0)throw new IllegalArgumentException(text+"\nIndex cannot be negative");
-			}
-			if(typeBits.length>2)throw new IllegalArgumentException(text+"\nCan only have one index.");
-			x = Double.parseDouble(tokens[1]);
-			y = Double.parseDouble(tokens[2]);
-			w = Double.parseDouble(tokens[3]);
-			h = ntokens>4?Double.parseDouble(tokens[4]):w;
-			if(Bits.readBit(typeData,TYPE_CIRCLE)&&!Floats.isNear(w, h))throw new IllegalArgumentException(text+"\nThis type is a circle, so the width and height (diameter) must be the same");
-			r = ntokens>5?Double.parseDouble(tokens[5]):0;
-			if(Bits.readBit(typeData,TYPE_UNROTATABLE)&&!Floats.isNear(r, 0))throw new IllegalArgumentException(text+"\nThis type cannot be rotated");
-			for(int i=6;i<ntokens;i++){
-				String tk = tokens[i].trim();
-				if(tk.length()>0){
-					joints.add(Integer.parseInt(tk));
-				}
-			}
-			if(!Bits.readBit(typeData,TYPE_DESIGN)&&joints.size()>0)throw new IllegalArgumentException(text+"\nThis type is not a design piece, so it cannot be jointed");
+			parseFCML(text,0,text.length());
 			break;
 		}
 		default:{
@@ -243,6 +281,24 @@ public class FCObj {
 		}
 	}
 	
+	/**
+	 * Parse a single FC object in FCML format from part of some text,
+	 * setting the fields of this object
+	 * <br>
+	 * Throws if it isn't an object, use {@link FCMLParser} directly
+	 * when that is expected to happen
+	 * 
+	 * @param text text containing the object
+	 * @param start where the object starts, inclusive
+	 * @param end where the object ends, exclusive
+	 */
+	public void parseFCML(CharSequence text,int start,int end){
+		FCMLParser parser = new FCMLParser();
+		if(!parser.parseInto(this, text, start, end)){
+			throw new IllegalArgumentException(text.subSequence(start, end)+"\n"+parser.getMessage());
+		}
+	}
+	
 	/**
 	 * Copy method
 	 * 
@@ -252,13 +308,14 @@ public class FCObj {
 		if(source==null)throw new NullPointerException("Can't copy a null object");
 		z=source.z;
 		type=source.type;
+		typeId=source.typeId;
+		typeData=source.typeData;
 		x=source.x;
 		y=source.y;
 		w=source.w;
 		h=source.h;
 		r=source.r;
-		joints.clear();
-		joints.addAll(source.joints);
+		joints.copyFrom(source.joints);
 	}
 	
 	public boolean equals(Object o){
@@ -297,24 +354,38 @@ public class FCObj {
 	 * @return
 	 */
 	public String toString(String format){
+		return appendTo(new StringBuilder(), format).toString();
+	}
+	
+	/**
+	 * Export this object in a canonical format, appending it to
+	 * an existing builder
+	 * <br>
+	 * Numbers are written as the shortest text which reads back
+	 * as the same value
+	 * 
+	 * @param sb builder to append to
+	 * @param format format type
+	 * @return the same builder
+	 */
+	public StringBuilder appendTo(StringBuilder sb,String format){
 		switch(format){
 		case "fcml":{
-			StringBuilder sb = new StringBuilder();
 			sb.append(type);
 			if(z>=0){
 				sb.append('#');
 				sb.append(z);
 			}
 			sb.append(" (");
-			sb.append(x);
+			Decimals.append(sb, x);
 			sb.append(", ");
-			sb.append(y);
+			Decimals.append(sb, y);
 			sb.append("), (");
-			sb.append(w);
+			Decimals.append(sb, w);
 			sb.append(", ");
-			sb.append(h);
+			Decimals.append(sb, h);
 			sb.append("), ");
-			sb.append(r);
+			Decimals.append(sb, r);
 			int jn = joints.size();
 			if(jn>0){
 				sb.append(", [");
@@ -325,7 +396,7 @@ public class FCObj {
 				}
 				sb.append(']');
 			}
-			return sb.toString();
+			return sb;
 		}
 		default:{
 			throw new IllegalArgumentException("Unrecognized format \""+format+"\"");
@@ -345,9 +416,8 @@ public class FCObj {
 				y = this.y,
 				rx = this.w*0.5,
 				ry = this.h*0.5,
-				r = Math.toRadians(this.r),
-				cr = Math.cos(r),
-				sr = Math.sin(r),
+				cr = getCos(),
+				sr = getSin(),
 				rcx = rx*cr,
 				rcy = ry*cr,
 				rsx = rx*sr,
@@ -381,15 +451,15 @@ public class FCObj {
 		}else{
 			final double x = this.x,
 					y = this.y,
-					rx = Math.abs(this.w*0.5),
-					ry = Math.abs(this.h*0.5),
-					r = -Math.toRadians(this.r),// Invert rotation
-					cr = Math.cos(r),
-					sr = Math.sin(r);
+					rx = getHalfWidth(),
+					ry = getHalfHeight(),
+					cr = getCos(),
+					sr = getSin();
 			px -= x;
 			py -= y;
-			final double nx = px*cr-py*sr;
-			py = px*sr+py*cr;
+			// Invert rotation
+			final double nx = px*cr+py*sr;
+			py = py*cr-px*sr;
 			px = nx;
 			return -rx<=px&&px<=rx && -ry<=py&&py<=ry;
 		}
@@ -402,13 +472,15 @@ public class FCObj {
 	 * @return
 	 */
 	public boolean intersects(FCObj other){
+		if(getMaxX()<other.getMinX()||other.getMaxX()<getMinX()
+				||getMaxY()<other.getMinY()||other.getMaxY()<getMinY())return false;
 		boolean iscircle = Bits.readBit(getTypeData(), TYPE_CIRCLE);
 		boolean oiscircle = Bits.readBit(other.getTypeData(), TYPE_CIRCLE);
 		if(iscircle){
 			if(oiscircle){
 				return intersectsCC(other);
 			}else{
-				return other.intersectsRC(other);
+				return other.intersectsRC(this);
 			}
 		}else{
 			if(oiscircle){
@@ -427,7 +499,8 @@ public class FCObj {
 	 * @return
 	 */
 	public boolean intersectsRR(FCObj other){
-		return intersectsPP(corners(),other.corners());
+		return Geometry.rectRect(x, y, getHalfWidth(), getHalfHeight(), getCos(), getSin(),
+				other.x, other.y, other.getHalfWidth(), other.getHalfHeight(), other.getCos(), other.getSin());
 	}
 	
 	/**
@@ -438,24 +511,8 @@ public class FCObj {
 	 * @return
 	 */
 	public boolean intersectsRC(FCObj other){
-		double px = other.x,
-				py = other.y,
-				pr = Math.abs(other.w*0.5);
-		final double x = this.x,
-				y = this.y,
-				rx = Math.abs(this.w*0.5),
-				ry = Math.abs(this.h*0.5),
-				r = -Math.toRadians(this.r),// Invert rotation
-				cr = Math.cos(r),
-				sr = Math.sin(r);
-		px -= x;
-		py -= y;
-		final double nx = Math.abs(px*cr-py*sr);
-		py = Math.abs(px*sr+py*cr);
-		px = nx;
-		if(px>rx+pr||py>ry+pr)return false;
-		if(px<=rx||py<=ry)return true;
-		return Math.hypot(px-rx, py-ry)<=pr;
+		return Geometry.rectCircle(x, y, getHalfWidth(), getHalfHeight(), getCos(), getSin(),
+				other.x, other.y, other.getHalfWidth());
 	}
 	
 	/**
@@ -466,7 +523,7 @@ public class FCObj {
 	 * @return
 	 */
 	public boolean intersectsCC(FCObj other){
-		return Math.hypot(x-other.x, y-other.y)<=Math.abs(w)+Math.abs(other.w);
+		return Geometry.circleCircle(x, y, getHalfWidth(), other.x, other.y, other.getHalfWidth());
 	}
 	
 	/**
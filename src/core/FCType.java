@@ -0,0 +1,281 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Registry of every known FC object type and all the names it
+ * can be written as
+ * <br>
+ * Each distinct type gets a small id, used as an index into plain
+ * arrays, so once an object's type is resolved nothing needs to
+ * look it up by name again
+ * <br>
+ * Built once and never changed after
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class FCType {
+	
+	//Disallow invoking constructor
+	private FCType(){}
+	
+	/**
+	 * Id of the empty type, which has no flags set
+	 */
+	public static final int EMPTY = 0;
+	
+	/**
+	 * Standard name for each type id
+	 */
+	private static final String[] TYPE_NAMES;
+	/**
+	 * Type data (flags) for each type id
+	 */
+	private static final int[] TYPE_DATA;
+	/**
+	 * Every name, including aliases
+	 */
+	private static final String[] NAMES;
+	/**
+	 * Type id for each name
+	 */
+	private static final int[] NAME_TYPES;
+	/**
+	 * Open addressing table of indices into <i>NAMES</i>, -1 where empty,
+	 * used to find a name without making a {@link String} for it
+	 */
+	private static final int[] TABLE;
+	
+	// Only used while building
+	private static ArrayList<String> typeNames = new ArrayList<>();
+	private static ArrayList<Integer> typeData = new ArrayList<>();
+	private static ArrayList<String> names = new ArrayList<>();
+	private static ArrayList<Integer> nameTypes = new ArrayList<>();
+	
+	/**
+	 * Quickly add a pair, a new name for existing type data
+	 * becomes its standard name
+	 * 
+	 * @param name
+	 * @param type
+	 */
+	private static void addNameType(String name,int type){
+		int id = typeData.indexOf(type);
+		if(id<0){
+			id = typeData.size();
+			typeData.add(type);
+			typeNames.add(name);
+		}else{
+			typeNames.set(id, name);
+		}
+		names.add(name);
+		nameTypes.add(id);
+	}
+	/**
+	 * Quickly add a pair
+	 * 
+	 * @param name
+	 * @param baseType original type
+	 * @param ts flags to toggle
+	 */
+	private static void addNameTypeBits(String name,int baseType,int...ts){
+		for(int i:ts){
+			baseType^=(1<<i);
+		}
+		addNameType(name,baseType);
+	}
+	/**
+	 * Add other names which are identical to some name
+	 * 
+	 * @param to the reference name
+	 * @param from
+	 */
+	private static void addAlias(String to,String...from){
+		int id = nameTypes.get(names.indexOf(to));
+		for(String v:from){
+			int i = names.indexOf(v);
+			if(i<0){
+				names.add(v);
+				nameTypes.add(id);
+			}else{
+				nameTypes.set(i, id);
+			}
+		}
+	}
+	
+	/**
+	 * Add both rectangle and circle for type
+	 * 
+	 * @param name
+	 * @param baseType
+	 * @param ts
+	 */
+	private static void addNameTypeBitsPair(String name,int baseType,int...ts){
+		for(int i:ts){
+			baseType^=(1<<i);
+		}
+		addNameType(name+"Rect",baseType);
+		baseType^=(1<<FCObj.TYPE_CIRCLE);
+		addNameType(name+"Circle",baseType);
+	}
+	
+	static{
+		// Add special
+		addNameTypeBits("Empty",0);
+		// Add nonstandard and standalone aliases first
+		addNameTypeBits("UnpowGoalCircle",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_GOAL,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE,FCObj.TYPE_CIRCLE);
+		addNameTypeBits("CWGoalCircle",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_GOAL,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE,FCObj.TYPE_CIRCLE,FCObj.TYPE_POWERED,FCObj.TYPE_CLOCKWISE);
+		addNameTypeBits("CCWGoalCircle",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_GOAL,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE,FCObj.TYPE_CIRCLE,FCObj.TYPE_POWERED);
+		// Add standard types next
+		addNameTypeBits("BuildArea",0,FCObj.TYPE_UNROTATABLE);
+		addNameTypeBits("GoalArea",0,FCObj.TYPE_UNROTATABLE,FCObj.TYPE_GOAL);
+		addNameTypeBitsPair("Static",0,FCObj.TYPE_COLLIDES);
+		addNameTypeBitsPair("Dynamic",0,FCObj.TYPE_COLLIDES,FCObj.TYPE_MOVABLE);
+		addNameTypeBitsPair("Goal",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_GOAL,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE);
+		addNameTypeBits("UnpowWheel",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE,FCObj.TYPE_CIRCLE);
+		addNameTypeBits("CWWheel",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE,FCObj.TYPE_CIRCLE,FCObj.TYPE_POWERED,FCObj.TYPE_CLOCKWISE);
+		addNameTypeBits("CCWWheel",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE,FCObj.TYPE_CIRCLE,FCObj.TYPE_POWERED);
+		addNameTypeBits("WaterRod",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE,FCObj.TYPE_NOSELFCOLLIDE);
+		addNameTypeBits("WoodRod",0,FCObj.TYPE_MOVABLE,FCObj.TYPE_DESIGN,FCObj.TYPE_JOINTABLE);
+		// Add separate aliases after
+		addAlias("BuildArea","BA","Build");
+		addAlias("GoalArea","GA","Goal");
+		addAlias("StaticRect","SR");
+		addAlias("StaticCircle","SC");
+		addAlias("GoalRect","GR");
+		addAlias("GoalCircle","GC","GP","UG");
+		addAlias("UnpowWheel","UW","Unpowered");
+		addAlias("CWWheel","WW","Clockwise");
+		addAlias("CCWWheel","CW","Counterclockwise");
+		addAlias("CWGoalCircle","WG");
+		addAlias("CCWGoalCircle","CG");
+		addAlias("WaterRod","BR","Water");
+		addAlias("WoodRod","WR","Wood");
+		// Freeze
+		int tn = typeData.size();
+		TYPE_NAMES = typeNames.toArray(new String[tn]);
+		TYPE_DATA = new int[tn];
+		for(int i=0;i<tn;i++){
+			TYPE_DATA[i] = typeData.get(i);
+		}
+		int nn = names.size();
+		NAMES = names.toArray(new String[nn]);
+		NAME_TYPES = new int[nn];
+		for(int i=0;i<nn;i++){
+			NAME_TYPES[i] = nameTypes.get(i);
+		}
+		int n = Bits.gePo2(nn*2);
+		TABLE = new int[n];
+		Arrays.fill(TABLE, -1);
+		for(int j=0;j<nn;j++){
+			int i = NAMES[j].hashCode()&(n-1);
+			while(TABLE[i]>=0)i=(i+1)&(n-1);
+			TABLE[i] = j;
+		}
+		typeNames = null;
+		typeData = null;
+		names = null;
+		nameTypes = null;
+	}
+	
+	/**
+	 * @return number of distinct types
+	 */
+	public static int count(){
+		return TYPE_DATA.length;
+	}
+	
+	/**
+	 * @return number of names, including aliases
+	 */
+	public static int nameCount(){
+		return NAMES.length;
+	}
+	
+	/**
+	 * Get the type data (flags) of a type, test them with
+	 * the <i>TYPE_</i> bits in {@link FCObj}
+	 * 
+	 * @param id type id
+	 * @return
+	 */
+	public static int getData(int id){
+		return TYPE_DATA[id];
+	}
+	
+	/**
+	 * Get the standard name of a type
+	 * 
+	 * @param id type id
+	 * @return
+	 */
+	public static String getName(int id){
+		return TYPE_NAMES[id];
+	}
+	
+	/**
+	 * Get a name, names are numbered from 0 to <i>nameCount()</i>
+	 * 
+	 * @param name name index
+	 * @return
+	 */
+	public static String getAlias(int name){
+		return NAMES[name];
+	}
+	
+	/**
+	 * Get the type id a name refers to
+	 * 
+	 * @param name name index
+	 * @return
+	 */
+	public static int getAliasType(int name){
+		return NAME_TYPES[name];
+	}
+	
+	/**
+	 * Find the name which matches the range
+	 * 
+	 * @param text
+	 * @param start inclusive
+	 * @param end exclusive
+	 * @return the name index, or -1 if it is not a known name
+	 */
+	public static int lookupAlias(CharSequence text,int start,int end){
+		int hash = 0;
+		for(int i=start;i<end;i++){
+			hash = 31*hash+text.charAt(i);
+		}
+		final int[] table = TABLE;
+		final int mask = table.length-1;
+		final int len = end-start;
+		for(int i=hash&mask;;i=(i+1)&mask){
+			int j = table[i];
+			if(j<0)return -1;
+			String name = NAMES[j];
+			if(name.hashCode()==hash&&name.length()==len&&regionEquals(name,text,start)){
+				return j;
+			}
+		}
+	}
+	
+	/**
+	 * Find the type a name refers to
+	 * 
+	 * @param name
+	 * @return the type id, or -1 if it is not a known name
+	 */
+	public static int lookup(String name){
+		int j = lookupAlias(name, 0, name.length());
+		return j<0?-1:NAME_TYPES[j];
+	}
+	
+	private static boolean regionEquals(String name,CharSequence text,int start){
+		for(int i=0,n=name.length();i<n;i++){
+			if(name.charAt(i)!=text.charAt(start+i))return false;
+		}
+		return true;
+	}
+	
+}
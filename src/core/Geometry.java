@@ -0,0 +1,176 @@
+package core;
+
+/**
+ * Intersection tests between rotated rectangles and circles,
+ * working on plain numbers so nothing is allocated
+ * <br>
+ * A rectangle is given by its center, half width, half height and
+ * the cosine and sine of its rotation, a circle by its center
+ * and radius, touching counts as intersecting
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class Geometry {
+	
+	//Disallow invoking constructor
+	private Geometry(){}
+	
+	/**
+	 * Do two rotated rectangles intersect?
+	 * <br>
+	 * Separating axis test, using the 2 edge directions of each
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param ahw half width, not negative
+	 * @param ahh half height, not negative
+	 * @param ac cosine of rotation
+	 * @param as sine of rotation
+	 * @param bx
+	 * @param by
+	 * @param bhw half width, not negative
+	 * @param bhh half height, not negative
+	 * @param bc cosine of rotation
+	 * @param bs sine of rotation
+	 * @return
+	 */
+	public static boolean rectRect(double ax,double ay,double ahw,double ahh,double ac,double as,
+			double bx,double by,double bhw,double bhh,double bc,double bs){
+		final double dx = bx-ax, dy = by-ay;
+		// Dot products between the axes of a and b, x with x is the
+		// same as y with y and x with y the same as y with x
+		final double cc = Math.abs(ac*bc+as*bs),
+				cs = Math.abs(as*bc-ac*bs);
+		// Axes of a
+		if(Math.abs(dx*ac+dy*as)>ahw+bhw*cc+bhh*cs)return false;
+		if(Math.abs(dy*ac-dx*as)>ahh+bhw*cs+bhh*cc)return false;
+		// Axes of b
+		if(Math.abs(dx*bc+dy*bs)>bhw+ahw*cc+ahh*cs)return false;
+		if(Math.abs(dy*bc-dx*bs)>bhh+ahw*cs+ahh*cc)return false;
+		return true;
+	}
+	
+	/**
+	 * Does a rotated rectangle intersect a circle?
+	 * 
+	 * @param x
+	 * @param y
+	 * @param hw half width, not negative
+	 * @param hh half height, not negative
+	 * @param c cosine of rotation
+	 * @param s sine of rotation
+	 * @param px circle center x
+	 * @param py circle center y
+	 * @param pr circle radius, not negative
+	 * @return
+	 */
+	public static boolean rectCircle(double x,double y,double hw,double hh,double c,double s,
+			double px,double py,double pr){
+		px -= x;
+		py -= y;
+		// Invert rotation, then fold into the first quadrant
+		final double nx = Math.abs(px*c+py*s);
+		py = Math.abs(py*c-px*s);
+		px = nx;
+		if(px>hw+pr||py>hh+pr)return false;
+		if(px<=hw||py<=hh)return true;
+		return Math.hypot(px-hw, py-hh)<=pr;
+	}
+	
+	/**
+	 * Do two circles intersect?
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param ar radius, not negative
+	 * @param bx
+	 * @param by
+	 * @param br radius, not negative
+	 * @return
+	 */
+	public static boolean circleCircle(double ax,double ay,double ar,double bx,double by,double br){
+		final double dx = ax-bx, dy = ay-by, rs = ar+br;
+		return dx*dx+dy*dy<=rs*rs;
+	}
+	
+	/**
+	 * Does a shape intersect the shape in a store slot?
+	 * 
+	 * @param circle if true, the shape is a circle with radius <i>hw</i>
+	 * @param x
+	 * @param y
+	 * @param hw half width, not negative
+	 * @param hh half height, not negative, ignored for circles
+	 * @param c cosine of rotation, ignored for circles
+	 * @param s sine of rotation, ignored for circles
+	 * @param store
+	 * @param slot
+	 * @return
+	 */
+	public static boolean intersects(boolean circle,double x,double y,double hw,double hh,double c,double s,
+			ObjectStore store,int slot){
+		final double ox = store.x[slot], oy = store.y[slot],
+				ohw = Math.abs(store.w[slot]*0.5);
+		if(Bits.readBit(store.typeData[slot], FCObj.TYPE_CIRCLE)){
+			if(circle)return circleCircle(x, y, hw, ox, oy, ohw);
+			return rectCircle(x, y, hw, hh, c, s, ox, oy, ohw);
+		}
+		final double ohh = Math.abs(store.h[slot]*0.5),
+				oc = store.cos[slot], os = store.sin[slot];
+		if(circle)return rectCircle(ox, oy, ohw, ohh, oc, os, x, y, hw);
+		return rectRect(x, y, hw, hh, c, s, ox, oy, ohw, ohh, oc, os);
+	}
+	
+	/**
+	 * Do the shapes in two store slots intersect?
+	 * 
+	 * @param store
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static boolean intersects(ObjectStore store,int a,int b){
+		if(store.maxx[a]<store.minx[b]||store.maxx[b]<store.minx[a]
+				||store.maxy[a]<store.miny[b]||store.maxy[b]<store.miny[a])return false;
+		return intersects(Bits.readBit(store.typeData[a], FCObj.TYPE_CIRCLE),
+				store.x[a], store.y[a], Math.abs(store.w[a]*0.5), Math.abs(store.h[a]*0.5),
+				store.cos[a], store.sin[a], store, b);
+	}
+	
+	/**
+	 * Test one shape against many store slots, keeping the ones
+	 * it intersects
+	 * <br>
+	 * Slots whose bounding box misses the shape's are skipped
+	 * before doing the exact test
+	 * 
+	 * @param circle if true, the shape is a circle with radius <i>hw</i>
+	 * @param x
+	 * @param y
+	 * @param hw half width, not negative
+	 * @param hh half height, not negative, ignored for circles
+	 * @param c cosine of rotation, ignored for circles
+	 * @param s sine of rotation, ignored for circles
+	 * @param store
+	 * @param slots slots to test
+	 * @param result slots which intersect are added to this, in the same order
+	 */
+	public static void intersects(boolean circle,double x,double y,double hw,double hh,double c,double s,
+			ObjectStore store,IntList slots,IntList result){
+		double ex = hw, ey = hw;
+		if(!circle){
+			final double ac = Math.abs(c), as = Math.abs(s);
+			ex = hw*ac+hh*as;
+			ey = hw*as+hh*ac;
+		}
+		final double minx = x-ex, miny = y-ey, maxx = x+ex, maxy = y+ey;
+		final double[] sminx = store.minx, sminy = store.miny, smaxx = store.maxx, smaxy = store.maxy;
+		for(int j=0,n=slots.size();j<n;j++){
+			final int i = slots.get(j);
+			if(smaxx[i]<minx||maxx<sminx[i]||smaxy[i]<miny||maxy<sminy[i])continue;
+			if(intersects(circle, x, y, hw, hh, c, s, store, i))result.add(i);
+		}
+	}
+	
+}
@@ -1,8 +1,10 @@
 package core;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.awt.*;
 import java.awt.geom.*;
+import java.awt.image.*;
 import java.awt.color.*;
 import java.awt.datatransfer.*;
 import java.awt.event.*;
@@ -21,6 +23,24 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 	public static final double ROUND_RADIUS = 2;
 	public static final double JOINT_RADIUS_OUTER = 4;
 	public static final double JOINT_RADIUS_INNER = 2;
+	/**
+	 * How far outside its bounding box an object can draw, in world units,
+	 * covers outlines, joints and rounding
+	 */
+	public static final double CULL_MARGIN = 8;
+	/**
+	 * Most pixels on each side of a tile, with more than one core
+	 * the window is split into tiles which are drawn in parallel
+	 */
+	public static final int TILE_SIZE = 256;
+	/**
+	 * Default for <i>detailThreshold</i>, in pixels
+	 */
+	public static final double DETAIL_THRESHOLD = 1;
+	/**
+	 * Largest <i>detailThreshold</i>, in pixels
+	 */
+	public static final double DETAIL_THRESHOLD_MAX = 64;
 	
 	public static final Color TRANSPARENT = new Color(0,0,0,0);
 	public static final Color[] ATRANSPARENT = {TRANSPARENT,TRANSPARENT};
@@ -112,13 +132,192 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 	 * Show axes and grid?
 	 */
 	public boolean showGrid;
+	/**
+	 * Pick the object drawn under the mouse instead of
+	 * the one with the closest center?
+	 */
+	public boolean pixelPicking;
+	/**
+	 * Details smaller than this many pixels are left out: joints,
+	 * inner fills and round corners, and objects smaller than this
+	 * both ways are drawn as a block of pixels, 0 to draw everything
+	 * <br>
+	 * Change it with {@link #setDetailThreshold(double)} so the view
+	 * is drawn again
+	 */
+	public double detailThreshold = DETAIL_THRESHOLD;
 	
 	public ArrayList<FCObj> objDoc;
-	public ArrayList<FCObj> objSel;
-	public ArrayList<FCObj> backupSel = new ArrayList<>();
+	public ObjectStore objStore;
+	/**
+	 * Index of the objects in <i>objStore</i> used for picking
+	 */
+	public final SpatialGrid grid = new SpatialGrid();
+	/**
+	 * Index of the objects in <i>objStore</i> used for box selection
+	 */
+	public final AABBTree tree = new AABBTree();
+	/**
+	 * Index of the joint points of the objects in <i>objStore</i>
+	 */
+	public final JointIndex jointIndex = new JointIndex();
+	/**
+	 * Used for picking when <i>pixelPicking</i> is on
+	 */
+	public final PickBuffer pickBuffer = new PickBuffer();
+	/**
+	 * Reused for query results
+	 */
+	private final IntList candidates = new IntList(), hits = new IntList();
+	/**
+	 * Kept between paints so the images can be reused
+	 */
+	private RenderLayer designLayer, levelLayer, overlayLayer;
+	/**
+	 * Slots on screen, and which slots are on screen
+	 */
+	private final IntList visibleSlots = new IntList();
+	private boolean[] visible = new boolean[0];
+	/**
+	 * Background and level pieces as last painted, reused while
+	 * the level and the view stay the same
+	 */
+	private BufferedImage levelImage;
+	// What the level image was drawn with
+	private ObjectStore levelStore;
+	private long levelVersion;
+	private double levelScale, levelAnchorx, levelAnchory, levelDetailThreshold;
+	private boolean levelWireframe, levelValid;
+	/**
+	 * Parts of the window drawn on their own
+	 */
+	private Tile[] tiles = new Tile[0];
+	/**
+	 * Objects to draw in this paint in order, with what the
+	 * tiles need to know about them
+	 */
+	private FCObj[] drawObjs = new FCObj[16];
+	private double[] drawCos = new double[16], drawSin = new double[16];
+	private int[] drawFlags = new int[16];
+	private int drawCount;
+	private static final int DRAW_BODY = 1, DRAW_SELECTED = 2, DRAW_FIRST = 4, DRAW_TINY = 8;
+	/**
+	 * Joints drawn for the current zoom level
+	 */
+	private final JointSprites jointSprites = new JointSprites(JOINT, JOINT_CENTER);
+	private static final AffineTransform IDENTITY = new AffineTransform();
+	public Selection objSel;
 	
 	public ActiveCommand command = new CommandNone(this);
 	
+	/**
+	 * Part of the window which is drawn on its own, onto its own
+	 * region of the shared layers, so only objects touching it
+	 * are drawn and tiles can be drawn at the same time
+	 * 
+	 * @author EPICI
+	 * @version 1.0
+	 */
+	private static final class Tile {
+		
+		/**
+		 * Region of the window
+		 */
+		final int x, y, w, h;
+		/**
+		 * Layers the regions are from
+		 */
+		final RenderLayer source;
+		final BufferedImage backdropSource;
+		/**
+		 * Layers which only draw inside the region
+		 */
+		final RenderLayer design, level, overlays;
+		/**
+		 * Draws inside the region of the background and level image
+		 */
+		final Graphics2D backdrop;
+		/**
+		 * Indices into the draw list of the objects touching this tile
+		 */
+		final IntList items = new IntList();
+		/**
+		 * Same as the view, each tile has its own so nothing
+		 * is shared between threads
+		 */
+		final AffineTransform viewTransform = new AffineTransform();
+		// Reused while drawing
+		final AffineTransform objTransform = new AffineTransform(), jointTransform = new AffineTransform();
+		final Ellipse2D.Double ellipse = new Ellipse2D.Double();
+		final Rectangle2D.Double rect = new Rectangle2D.Double();
+		final RoundRectangle2D.Double roundRect = new RoundRectangle2D.Double();
+		final double[] size = new double[4];
+		final int[] block = new int[4];
+		/**
+		 * z value of the level layer being drawn
+		 */
+		int leveln;
+		
+		Tile(RenderLayer design,RenderLayer level,RenderLayer overlays,BufferedImage backdrop,int x,int y,int w,int h){
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+			source = design;
+			backdropSource = backdrop;
+			this.design = design.region(x, y, w, h);
+			this.level = level.region(x, y, w, h);
+			this.overlays = overlays.region(x, y, w, h);
+			this.backdrop = backdrop.createGraphics();
+			this.backdrop.clipRect(x, y, w, h);
+		}
+		
+		void dispose(){
+			design.dispose();
+			level.dispose();
+			overlays.dispose();
+			backdrop.dispose();
+		}
+		
+	}
+	
+	/**
+	 * Draws a range of tiles, split in half until there is one each
+	 */
+	private static final class DrawTiles extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final GraphicEditorPane pane;
+		final Tile[] tiles;
+		final int lo, hi;
+		final boolean levelCached, showWireframe, showGrid;
+		final double minDetail;
+		
+		DrawTiles(GraphicEditorPane pane,Tile[] tiles,int lo,int hi,boolean levelCached,boolean showWireframe,boolean showGrid,double minDetail){
+			this.pane = pane;
+			this.tiles = tiles;
+			this.lo = lo;
+			this.hi = hi;
+			this.levelCached = levelCached;
+			this.showWireframe = showWireframe;
+			this.showGrid = showGrid;
+			this.minDetail = minDetail;
+		}
+		
+		@Override
+		protected void compute(){
+			if(hi-lo<=1){
+				pane.drawTile(tiles[lo], levelCached, showWireframe, showGrid, minDetail);
+			}else{
+				int mid = (lo+hi)>>>1;
+				invokeAll(new DrawTiles(pane, tiles, lo, mid, levelCached, showWireframe, showGrid, minDetail),
+						new DrawTiles(pane, tiles, mid, hi, levelCached, showWireframe, showGrid, minDetail));
+			}
+		}
+		
+	}
+	
 	public BitSet getKeys(){
 		return keys;
 	}
@@ -157,211 +356,499 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 		double anchory = this.anchory;
 		boolean showWireframe = this.showWireframe;
 		boolean showGrid = this.showGrid;
-		// Make layers
-		RenderLayer design = new RenderLayer(3,width,height);
-		design.translate(cx, cy);
-		design.scale(scale, scale);
-		design.translate(-anchorx, -anchory);
-		RenderLayer level = new RenderLayer(2,width,height);
-		level.translate(cx, cy);
-		level.scale(scale, scale);
-		level.translate(-anchorx, -anchory);
-		RenderLayer overlays = new RenderLayer(1,width,height);
-		overlays.translate(cx, cy);
-		overlays.scale(scale, scale);
-		overlays.translate(-anchorx, -anchory);
-		int leveln = -2;
+		double detailThreshold = this.detailThreshold;
+		double minDetail = detailThreshold/scale;
+		// Get layers, only making new ones when the size changes
+		RenderLayer design = designLayer = RenderLayer.reuse(designLayer, 3, width, height);
+		RenderLayer level = levelLayer = RenderLayer.reuse(levelLayer, 2, width, height);
+		RenderLayer overlays = overlayLayer = RenderLayer.reuse(overlayLayer, 1, width, height);
+		final ObjectStore store = objStore;
+		// Level pieces only need drawing again if they or the view changed,
+		// objects not in the store yet can't be tracked so nothing is reused then
+		final boolean levelCached = levelValid&&levelImage.getWidth()==width&&levelImage.getHeight()==height
+				&&store==levelStore&&store.levelVersion==levelVersion&&objDoc.size()==store.size
+				&&scale==levelScale&&anchorx==levelAnchorx&&anchory==levelAnchory&&showWireframe==levelWireframe
+				&&detailThreshold==levelDetailThreshold;
+		levelValid = false;
+		if(levelImage==null||levelImage.getWidth()!=width||levelImage.getHeight()!=height){
+			levelImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		// Split into tiles, only worth it with more than one core
+		final Tile[] tiles = getTiles(design, level, overlays, levelImage);
+		final int tileSize = tiles.length==1?Math.max(width, height):TILE_SIZE,
+				cols = (width+tileSize-1)/tileSize,
+				rows = (height+tileSize-1)/tileSize;
+		for(Tile tile:tiles){
+			tile.viewTransform.setToTranslation(cx, cy);
+			tile.viewTransform.scale(scale, scale);
+			tile.viewTransform.translate(-anchorx, -anchory);
+			tile.items.clear();
+		}
 		// Sort objects
 		objDoc.sort(FCObj.Z_COMPARE);
 		// Grab selection
-		HashMap<FCObj,Integer> selectedIndex = new HashMap<>();
-		int i=0;
-		for(FCObj obj:objSel){
-			selectedIndex.put(obj, i);
-			i++;
+		FCObj firstSelected = objSel.first();
+		// Find what is on screen
+		final double invScale = 1/scale,
+				margin = CULL_MARGIN+2*invScale,
+				vhw = cx*invScale+margin,
+				vhh = cy*invScale+margin;
+		final IntList visibleSlots = this.visibleSlots;
+		visibleSlots.clear();
+		tree.query(anchorx-vhw, anchory-vhh, anchorx+vhw, anchory+vhh, visibleSlots);
+		if(visible.length<store.limit)visible = new boolean[store.capacity()];
+		final boolean[] visible = this.visible;
+		for(int i=0,n=visibleSlots.size();i<n;i++){
+			visible[visibleSlots.get(i)] = true;
 		}
-		// Background
-		g.setColor(BACKGROUND);
-		g.fillRect(0, 0, width, height);
-		// Iterate and draw onto layers
+		// Make the list of objects to draw and give each to the tiles it touches,
+		// everything the tiles need is read here so they never touch the objects' caches
+		drawCount = 0;
 		for(FCObj obj:objDoc){
 			if(tracker!=Main.ticker)break;
-			int z = obj.z;
-			double x = obj.x, y = obj.y, w = obj.w, h = obj.h, r = obj.r;
 			int typeData = obj.getTypeData();
-			Integer osel = selectedIndex.get(obj);
-			boolean isselected = osel!=null;
-			int sel = isselected?osel:-1;
-			boolean isselectedfirst = sel==0;
 			boolean isdesign = Bits.readBit(typeData, FCObj.TYPE_DESIGN);
-			boolean iscircle = Bits.readBit(typeData, FCObj.TYPE_CIRCLE);
-			boolean isgoal = Bits.readBit(typeData, FCObj.TYPE_GOAL);
-			boolean isjointable = Bits.readBit(typeData, FCObj.TYPE_JOINTABLE);
-			boolean iscollide = Bits.readBit(typeData, FCObj.TYPE_COLLIDES);
-			boolean ismovable = Bits.readBit(typeData, FCObj.TYPE_MOVABLE);
-			boolean isrod = isdesign&&!iscircle&&!isgoal;
-			boolean iswater = isrod&&Bits.readBit(typeData, FCObj.TYPE_NOSELFCOLLIDE);
-			boolean isstatic = !isdesign&&iscollide&&!ismovable;
-			Color[] colors = getColorsFor(typeData);
-			Color colOutline = colors[0];
-			Color colFill = colors[1];
-			RenderLayer target = design;// Where to render to
-			if(!isdesign){// Level
-				if(z>leveln){
-					// New layer
-					leveln=z;
-					level.renderTo(g);
-					level = new RenderLayer(2,width,height);
-					level.translate(cx, cy);
-					level.scale(scale, scale);
-					level.translate(-anchorx, -anchory);
+			// Water rods are drawn twice as thick, so they can reach past their bounding box
+			boolean iswater = isdesign&&!showWireframe&&Bits.readBit(typeData, FCObj.TYPE_NOSELFCOLLIDE)
+					&&!Bits.readBit(typeData, FCObj.TYPE_CIRCLE)&&!Bits.readBit(typeData, FCObj.TYPE_GOAL);
+			// Objects not in the store yet are always checked
+			if(store.has(obj)&&!visible[obj.id]&&!iswater)continue;
+			boolean isselected = objSel.contains(obj);
+			// Cached level pieces only need their selection overlay
+			if(!isdesign&&levelCached&&!isselected)continue;
+			// Pixels it could touch
+			final double reach = iswater?margin+Math.abs(obj.h*0.5):margin;
+			final double sminx = (obj.getMinX()-reach-anchorx)*scale+cx,
+					sminy = (obj.getMinY()-reach-anchory)*scale+cy,
+					smaxx = (obj.getMaxX()+reach-anchorx)*scale+cx,
+					smaxy = (obj.getMaxY()+reach-anchory)*scale+cy;
+			int c0 = 0, c1 = cols-1, r0 = 0, r1 = rows-1;
+			// Not finite means everywhere
+			if(!Double.isNaN(sminx+sminy+smaxx+smaxy)){
+				c0 = (int)Math.max(c0, Math.floor(sminx/tileSize));
+				c1 = (int)Math.min(c1, Math.floor(smaxx/tileSize));
+				r0 = (int)Math.max(r0, Math.floor(sminy/tileSize));
+				r1 = (int)Math.min(r1, Math.floor(smaxy/tileSize));
+			}
+			// Off screen
+			if(c0>c1||r0>r1)continue;
+			final int item = drawCount++;
+			if(item==drawObjs.length){
+				int length = item*2;
+				drawObjs = Arrays.copyOf(drawObjs, length);
+				drawCos = Arrays.copyOf(drawCos, length);
+				drawSin = Arrays.copyOf(drawSin, length);
+				drawFlags = Arrays.copyOf(drawFlags, length);
+			}
+			drawObjs[item] = obj;
+			drawCos[item] = obj.getCos();
+			drawSin[item] = obj.getSin();
+			boolean istiny = isTiny(obj, scale, detailThreshold);
+			drawFlags[item] = (isdesign||!levelCached?DRAW_BODY:0)
+					|(isselected?DRAW_SELECTED:0)
+					|(obj==firstSelected?DRAW_FIRST:0)
+					|(istiny?DRAW_TINY:0);
+			for(int r=r0;r<=r1;r++){
+				for(int c=c0;c<=c1;c++){
+					tiles[r*cols+c].items.add(item);
 				}
-				target = level;
 			}
-			double iw = Math.abs(w-8);
-			double ih = Math.abs(h-8);
-			Graphics2D ig = target.graphics[0];
-			AffineTransform ot = ig.getTransform();
-			if(iscircle){// Circle
-				double ow = Math.max(w, iw+2);
-				double oh = Math.max(h, ih+2);
-				ig.translate(x, y);
-				ig.rotate(Math.toRadians(r));
+		}
+		final boolean finished = tracker==Main.ticker;
+		for(int i=0,n=visibleSlots.size();i<n;i++){
+			visible[visibleSlots.get(i)] = false;
+		}
+		// Draw the tiles
+		jointSprites.prepare(scale, showWireframe);
+		if(tiles.length==1){
+			drawTile(tiles[0], levelCached, showWireframe, showGrid, minDetail);
+		}else{
+			ForkJoinPool.commonPool().invoke(new DrawTiles(this, tiles, 0, tiles.length, levelCached, showWireframe, showGrid, minDetail));
+		}
+		Arrays.fill(drawObjs, 0, drawCount, null);
+		// Finally, render all
+		if(!levelCached&&finished){
+			// Only reuse it if every level piece got drawn
+			levelValid = true;
+			levelStore = store;
+			levelVersion = store.levelVersion;
+			levelScale = scale;
+			levelAnchorx = anchorx;
+			levelAnchory = anchory;
+			levelWireframe = showWireframe;
+			levelDetailThreshold = detailThreshold;
+		}else if(levelCached){
+			levelValid = true;
+		}
+		g.drawImage(levelImage, 0, 0, null);
+		design.renderTo(g);
+		g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, OVERLAY_ALPHA));
+		overlays.renderTo(g);
+		g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
+		command.render(g);
+	}
+	
+	/**
+	 * Get the tiles covering the layers, only making new ones
+	 * when the layers changed
+	 */
+	private Tile[] getTiles(RenderLayer design,RenderLayer level,RenderLayer overlays,BufferedImage backdrop){
+		Tile[] tiles = this.tiles;
+		if(tiles.length>0&&tiles[0].source==design&&tiles[0].backdropSource==backdrop)return tiles;
+		for(Tile tile:tiles){
+			tile.dispose();
+		}
+		final int width = design.w, height = design.h;
+		// Nothing to gain on one core
+		final int tileSize = ForkJoinPool.getCommonPoolParallelism()>1?TILE_SIZE:Math.max(width, height),
+				cols = (width+tileSize-1)/tileSize,
+				rows = (height+tileSize-1)/tileSize;
+		tiles = new Tile[cols*rows];
+		for(int r=0;r<rows;r++){
+			for(int c=0;c<cols;c++){
+				int x = c*tileSize, y = r*tileSize;
+				tiles[r*cols+c] = new Tile(design, level, overlays, backdrop,
+						x, y, Math.min(tileSize, width-x), Math.min(tileSize, height-y));
+			}
+		}
+		return this.tiles = tiles;
+	}
+	
+	/**
+	 * Draw the objects given to a tile onto its part of the layers,
+	 * can run on any thread
+	 */
+	private void drawTile(Tile tile,boolean levelCached,boolean showWireframe,boolean showGrid,double minDetail){
+		RenderLayer design = tile.design;
+		design.clear();
+		design.transform(tile.viewTransform);
+		RenderLayer level = tile.level;
+		if(!levelCached){
+			Graphics2D backdrop = tile.backdrop;
+			backdrop.setColor(BACKGROUND);
+			backdrop.fillRect(tile.x, tile.y, tile.w, tile.h);
+			level.clear();
+			level.transform(tile.viewTransform);
+		}
+		RenderLayer overlays = tile.overlays;
+		overlays.clear();
+		overlays.transform(tile.viewTransform);
+		tile.leveln = -2;
+		final IntList items = tile.items;
+		for(int j=0,n=items.size();j<n;j++){
+			drawObject(tile, items.get(j), showWireframe, minDetail);
+		}
+		// Grid
+		if(showGrid){
+			Graphics2D ig = overlays.graphics[0];
+			ig.setColor(GRID);
+			ig.drawLine(-BOUNDX, -BOUNDY, BOUNDX, -BOUNDY);
+			ig.drawLine(-BOUNDX, 0, BOUNDX, 0);
+			ig.drawLine(-BOUNDX, BOUNDY, BOUNDX, BOUNDY);
+			ig.drawLine(-BOUNDX, -BOUNDY, -BOUNDX, BOUNDY);
+			ig.drawLine(0, -BOUNDY, 0, BOUNDY);
+			ig.drawLine(BOUNDX, -BOUNDY, BOUNDX, BOUNDY);
+		}
+		if(!levelCached)level.renderTo(tile.backdrop);
+	}
+	
+	/**
+	 * Draw one object from the draw list onto a tile
+	 * 
+	 * @param minDetail size in world units of the smallest detail to draw
+	 */
+	private void drawObject(Tile tile,int item,boolean showWireframe,double minDetail){
+		final FCObj obj = drawObjs[item];
+		final int flags = drawFlags[item];
+		final AffineTransform viewTransform = tile.viewTransform, objTransform = tile.objTransform,
+				jt = tile.jointTransform;
+		final Ellipse2D.Double ellipse = tile.ellipse;
+		final Rectangle2D.Double rect = tile.rect;
+		final RoundRectangle2D.Double roundRect = tile.roundRect;
+		final double[] size = tile.size;
+		RenderLayer design = tile.design, level = tile.level, overlays = tile.overlays;
+		int z = obj.z;
+		int typeData = obj.getTypeData();
+		boolean isselected = (flags&DRAW_SELECTED)!=0;
+		boolean isselectedfirst = (flags&DRAW_FIRST)!=0;
+		boolean drawBody = (flags&DRAW_BODY)!=0;
+		double x = obj.x, y = obj.y, w = obj.w, h = obj.h;
+		final double cr = drawCos[item], sr = drawSin[item];
+		objTransform.setTransform(cr, sr, -sr, cr, x, y);
+		boolean isdesign = Bits.readBit(typeData, FCObj.TYPE_DESIGN);
+		boolean iscircle = Bits.readBit(typeData, FCObj.TYPE_CIRCLE);
+		boolean isgoal = Bits.readBit(typeData, FCObj.TYPE_GOAL);
+		boolean isjointable = Bits.readBit(typeData, FCObj.TYPE_JOINTABLE);
+		boolean isrod = isdesign&&!iscircle&&!isgoal;
+		Color[] colors = getColorsFor(typeData);
+		Color colOutline = colors[0];
+		Color colFill = colors[1];
+		RenderLayer target = design;// Where to render to
+		if(!isdesign&&drawBody){// Level
+			if(z>tile.leveln){
+				// New layer
+				tile.leveln=z;
+				level.renderTo(tile.backdrop);
+				level.clear();
+				level.transform(viewTransform);
+			}
+			target = level;
+		}
+		Graphics2D ig;
+		if((flags&DRAW_TINY)!=0){
+			final int[] block = tile.block;
+			getTinyBlock(obj, cr, sr, viewTransform, block);
+			final int px = block[0], py = block[1], pw = block[2], ph = block[3];
+			if(drawBody){
+				ig = target.graphics[0];
+				ig.setTransform(IDENTITY);
+				ig.setColor(colOutline);
+				ig.fillRect(px, py, pw, ph);
+				ig.setTransform(viewTransform);
+			}
+			if(isselected){
+				ig = overlays.graphics[0];
+				ig.setTransform(IDENTITY);
+				ig.setColor(isselectedfirst?SELECTED_OVERLAY_FIRST:SELECTED_OVERLAY);
+				ig.fillRect(px, py, pw, ph);
+				ig.setTransform(viewTransform);
+			}
+			return;
+		}
+		// Leave out what would be too small to see
+		boolean showJoints = isjointable&&JOINT_RADIUS_OUTER*2>=minDetail;
+		boolean rounded = ROUND_RADIUS>=minDetail;
+		final boolean nudge = getDrawSize(typeData, w, h, showWireframe, size);
+		final double ow = size[0], oh = size[1], iw = size[2], ih = size[3];
+		ig = target.graphics[0];
+		if(iscircle){// Circle
+			if(drawBody){
+				ig.transform(objTransform);
 				ig.setColor(colOutline);
+				ellipse.setFrame(ow*-0.5, oh*-0.5, ow, oh);
 				if(showWireframe){
-					ig.draw(new Ellipse2D.Double(ow*-0.5, oh*-0.5, ow, oh));
+					ig.draw(ellipse);
 				}else{
-					ig.fill(new Ellipse2D.Double(ow*-0.5, oh*-0.5, ow, oh));
+					ig.fill(ellipse);
 				}
-				ig.setTransform(ot);
-				if(isjointable){
+				ig.setTransform(viewTransform);
+				if(showJoints){
 					ig = target.graphics[2];
-					ot = ig.getTransform();
-					ig.translate(x, y);
-					ig.rotate(Math.toRadians(r));
-					drawJoint(ig,JOINT_CENTER,0,0);
-					drawJoint(ig,ow*0.5,0);
-					drawJoint(ig,ow*-0.5,0);
-					drawJoint(ig,0,oh*0.5);
-					drawJoint(ig,0,oh*-0.5);
+					// Joints are copied in pixels
+					jt.setTransform(viewTransform);
+					jt.concatenate(objTransform);
+					ig.setTransform(IDENTITY);
+					drawJoint(ig,jt,JOINT_CENTER,0,0);
+					drawJoint(ig,jt,ow*0.5,0);
+					drawJoint(ig,jt,ow*-0.5,0);
+					drawJoint(ig,jt,0,oh*0.5);
+					drawJoint(ig,jt,0,oh*-0.5);
 					if(iw>40){
-						drawJoint(ig,20,0);
-						drawJoint(ig,-20,0);
+						drawJoint(ig,jt,20,0);
+						drawJoint(ig,jt,-20,0);
 					}
 					if(ih>40){
-						drawJoint(ig,0,20);
-						drawJoint(ig,0,-20);
+						drawJoint(ig,jt,0,20);
+						drawJoint(ig,jt,0,-20);
 					}
-					ig.setTransform(ot);
+					ig.setTransform(viewTransform);
 				}
-				if(!showWireframe){
+				if(!showWireframe&&Math.min(iw, ih)>=minDetail){
 					ig = target.graphics[1];
-					ot = ig.getTransform();
-					ig.translate(x, y);
-					ig.rotate(Math.toRadians(r));
+					ig.transform(objTransform);
 					ig.setColor(colFill);
-					ig.fill(new Ellipse2D.Double(iw*-0.5, ih*-0.5, iw, ih));
-					ig.setTransform(ot);
-				}
-				if(isselected){
-					ig = overlays.graphics[0];
-					ig.translate(x, y);
-					ig.rotate(Math.toRadians(r));
-					ig.setColor(isselectedfirst?SELECTED_OVERLAY_FIRST:SELECTED_OVERLAY);
-					ig.fill(new Ellipse2D.Double(ow*-0.5, oh*-0.5, ow, oh));
-					ig.setTransform(ot);
-				}
-			}else{// Rectangle or rod
-				double ow,oh;
-				if(isrod){
-					ow = w;
-					oh = h;
-					if(iswater&&!showWireframe)oh*=2;
-					iw = Math.abs(ow-4);
-					ih = Math.abs(oh-4);
-				}else{
-					ow = Math.max(w, iw+2);
-					oh = Math.max(h, ih+2);
-				}
-				ig.translate(x, y);
-				ig.rotate(Math.toRadians(r));
-				if(!isrod&&isstatic&&!showWireframe){
-					ow+=1;
-					oh+=1;
-					ig.translate(0.5, 0.5);
+					ellipse.setFrame(iw*-0.5, ih*-0.5, iw, ih);
+					ig.fill(ellipse);
+					ig.setTransform(viewTransform);
 				}
+			}
+			if(isselected){
+				ig = overlays.graphics[0];
+				ig.transform(objTransform);
+				ig.setColor(isselectedfirst?SELECTED_OVERLAY_FIRST:SELECTED_OVERLAY);
+				ellipse.setFrame(ow*-0.5, oh*-0.5, ow, oh);
+				ig.fill(ellipse);
+				ig.setTransform(viewTransform);
+			}
+		}else{// Rectangle or rod
+			if(drawBody){
+				ig.transform(objTransform);
+				if(nudge)ig.translate(0.5, 0.5);
 				ig.setColor(colOutline);
 				if(showWireframe){
-					ig.draw(new Rectangle2D.Double(ow*-0.5, oh*-0.5, ow, oh));
+					rect.setRect(ow*-0.5, oh*-0.5, ow, oh);
+					ig.draw(rect);
+				}else if(rounded){
+					roundRect.setRoundRect(ow*-0.5, oh*-0.5, ow, oh, Math.PI/2, ROUND_RADIUS);
+					ig.fill(roundRect);
 				}else{
-					ig.fill(new RoundRectangle2D.Double(ow*-0.5, oh*-0.5, ow, oh, Math.PI/2, ROUND_RADIUS));
+					rect.setRect(ow*-0.5, oh*-0.5, ow, oh);
+					ig.fill(rect);
 				}
-				ig.setTransform(ot);
-				if(isjointable){
+				ig.setTransform(viewTransform);
+				if(showJoints){
 					ig = target.graphics[2];
-					ot = ig.getTransform();
-					ig.translate(x, y);
-					ig.rotate(Math.toRadians(r));
+					// Joints are copied in pixels
+					jt.setTransform(viewTransform);
+					jt.concatenate(objTransform);
+					ig.setTransform(IDENTITY);
 					if(isrod){
-						drawJoint(ig,ow*0.5,0);
-						drawJoint(ig,ow*-0.5,0);
+						drawJoint(ig,jt,ow*0.5,0);
+						drawJoint(ig,jt,ow*-0.5,0);
 					}else{
-						drawJoint(ig,0,0);
-						drawJoint(ig,ow*0.5,oh*0.5);
-						drawJoint(ig,ow*-0.5,oh*0.5);
-						drawJoint(ig,ow*0.5,-oh*0.5);
-						drawJoint(ig,ow*-0.5,-oh*0.5);
+						drawJoint(ig,jt,0,0);
+						drawJoint(ig,jt,ow*0.5,oh*0.5);
+						drawJoint(ig,jt,ow*-0.5,oh*0.5);
+						drawJoint(ig,jt,ow*0.5,-oh*0.5);
+						drawJoint(ig,jt,ow*-0.5,-oh*0.5);
 					}
-					ig.setTransform(ot);
+					ig.setTransform(viewTransform);
 				}
-				if(!showWireframe){
+				if(!showWireframe&&Math.min(iw, ih)>=minDetail){
 					ig = target.graphics[1];
-					ot = ig.getTransform();
-					ig.translate(x, y);
-					ig.rotate(Math.toRadians(r));
+					ig.transform(objTransform);
 					ig.setColor(colFill);
-					ig.fill(new Rectangle2D.Double(iw*-0.5, ih*-0.5, iw, ih));
-					ig.setTransform(ot);
+					rect.setRect(iw*-0.5, ih*-0.5, iw, ih);
+					ig.fill(rect);
+					ig.setTransform(viewTransform);
 				}
-				if(isselected){
-					ig = overlays.graphics[0];
-					ig.translate(x, y);
-					ig.rotate(Math.toRadians(r));
-					ig.setColor(isselectedfirst?SELECTED_OVERLAY_FIRST:SELECTED_OVERLAY);
-					ig.fill(new RoundRectangle2D.Double(ow*-0.5, oh*-0.5, ow, oh, Math.PI/2, ROUND_RADIUS));
-					ig.setTransform(ot);
+			}
+			if(isselected){
+				ig = overlays.graphics[0];
+				ig.transform(objTransform);
+				ig.setColor(isselectedfirst?SELECTED_OVERLAY_FIRST:SELECTED_OVERLAY);
+				if(rounded){
+					roundRect.setRoundRect(ow*-0.5, oh*-0.5, ow, oh, Math.PI/2, ROUND_RADIUS);
+					ig.fill(roundRect);
+				}else{
+					rect.setRect(ow*-0.5, oh*-0.5, ow, oh);
+					ig.fill(rect);
 				}
+				ig.setTransform(viewTransform);
 			}
 		}
-		// Grid
-		if(showGrid){
-			Graphics2D ig = overlays.graphics[0];
-			ig.setColor(GRID);
-			ig.drawLine(-BOUNDX, -BOUNDY, BOUNDX, -BOUNDY);
-			ig.drawLine(-BOUNDX, 0, BOUNDX, 0);
-			ig.drawLine(-BOUNDX, BOUNDY, BOUNDX, BOUNDY);
-			ig.drawLine(-BOUNDX, -BOUNDY, -BOUNDX, BOUNDY);
-			ig.drawLine(0, -BOUNDY, 0, BOUNDY);
-			ig.drawLine(BOUNDX, -BOUNDY, BOUNDX, BOUNDY);
+	}
+	
+	/**
+	 * Is an object too small to show any detail, so it is
+	 * drawn as a block of pixels instead?
+	 * 
+	 * @param obj
+	 * @param scale world to pixel scale
+	 * @param detailThreshold see <i>detailThreshold</i>
+	 * @return
+	 */
+	public static boolean isTiny(FCObj obj,double scale,double detailThreshold){
+		return (obj.getMaxX()-obj.getMinX())*scale<detailThreshold
+				&&(obj.getMaxY()-obj.getMinY())*scale<detailThreshold;
+	}
+	
+	/**
+	 * Find the block of pixels covering an object's bounding box,
+	 * which is drawn instead of it when it is tiny
+	 * 
+	 * @param obj
+	 * @param cr cosine of its rotation
+	 * @param sr sine of its rotation
+	 * @param view world to pixel transform, only scale and translation are used
+	 * @param out <i>x</i>, <i>y</i>, width and height in pixels are put in this
+	 */
+	public static void getTinyBlock(FCObj obj,double cr,double sr,AffineTransform view,int[] out){
+		final double x = obj.x, y = obj.y, w = obj.w, h = obj.h;
+		final boolean iscircle = Bits.readBit(obj.getTypeData(), FCObj.TYPE_CIRCLE);
+		final double ex = iscircle?Math.abs(w*0.5):Math.abs(w*0.5*cr)+Math.abs(h*0.5*sr),
+				ey = iscircle?Math.abs(w*0.5):Math.abs(w*0.5*sr)+Math.abs(h*0.5*cr),
+				vs = view.getScaleX(), vx = view.getTranslateX(), vy = view.getTranslateY();
+		final int px = (int)Math.floor((x-ex)*vs+vx), py = (int)Math.floor((y-ey)*vs+vy);
+		out[0] = px;
+		out[1] = py;
+		out[2] = Math.max(1, (int)Math.ceil((x+ex)*vs+vx)-px);
+		out[3] = Math.max(1, (int)Math.ceil((y+ey)*vs+vy)-py);
+	}
+	
+	/**
+	 * Find the sizes an object is drawn with, in its own space
+	 * 
+	 * @param typeData type of the object
+	 * @param w its width
+	 * @param h its height
+	 * @param showWireframe drawn as a wireframe?
+	 * @param out outer width, outer height, inner width and inner
+	 * height are put in this
+	 * @return true if it is nudged, drawn half a unit right and down
+	 */
+	public static boolean getDrawSize(int typeData,double w,double h,boolean showWireframe,double[] out){
+		final boolean isdesign = Bits.readBit(typeData, FCObj.TYPE_DESIGN);
+		final boolean iscircle = Bits.readBit(typeData, FCObj.TYPE_CIRCLE);
+		final boolean isrod = isdesign&&!iscircle&&!Bits.readBit(typeData, FCObj.TYPE_GOAL);
+		double iw = Math.abs(w-8), ih = Math.abs(h-8), ow, oh;
+		if(isrod){
+			ow = w;
+			oh = h;
+			// Water rods are drawn twice as thick
+			if(Bits.readBit(typeData, FCObj.TYPE_NOSELFCOLLIDE)&&!showWireframe)oh*=2;
+			iw = Math.abs(ow-4);
+			ih = Math.abs(oh-4);
+		}else{
+			ow = Math.max(w, iw+2);
+			oh = Math.max(h, ih+2);
 		}
-		// Finally, render all
-		level.renderTo(g);
-		design.renderTo(g);
-		g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, OVERLAY_ALPHA));
-		overlays.renderTo(g);
-		g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
-		command.render(g);
+		final boolean isstatic = !isdesign&&Bits.readBit(typeData, FCObj.TYPE_COLLIDES)&&!Bits.readBit(typeData, FCObj.TYPE_MOVABLE);
+		final boolean nudge = !iscircle&&!isrod&&isstatic&&!showWireframe;
+		if(nudge){
+			ow+=1;
+			oh+=1;
+		}
+		out[0] = ow;
+		out[1] = oh;
+		out[2] = iw;
+		out[3] = ih;
+		return nudge;
 	}
 	
 	public void drawJoint(Graphics2D g,double x,double y){
 		drawJoint(g,JOINT,x,y);
 	}
 	public void drawJoint(Graphics2D g,Color color,double x,double y){
+		drawJointShape(g,color,x,y,showWireframe);
+	}
+	private void drawJoint(Graphics2D g,AffineTransform at,double x,double y){
+		drawJoint(g,at,JOINT,x,y);
+	}
+	/**
+	 * Draw a joint at a point placed by a transform, using a sprite
+	 * if there is one for the colour
+	 * 
+	 * @param g where to draw, must have no transform
+	 * @param at from where the point is to pixels
+	 * @param color
+	 * @param x
+	 * @param y
+	 */
+	private void drawJoint(Graphics2D g,AffineTransform at,Color color,double x,double y){
+		final double px = at.getScaleX()*x+at.getShearX()*y+at.getTranslateX(),
+				py = at.getShearY()*x+at.getScaleY()*y+at.getTranslateY();
+		if(jointSprites.draw(g, color, px, py))return;
+		g.setTransform(at);
+		drawJoint(g,color,x,y);
+		g.setTransform(IDENTITY);
+	}
+	/**
+	 * Draw the shape of a joint, slow, but it is only done once
+	 * per zoom level for the colours which have sprites
+	 * 
+	 * @param g
+	 * @param color
+	 * @param x
+	 * @param y
+	 * @param wireframe
+	 */
+	public static void drawJointShape(Graphics2D g,Color color,double x,double y,boolean wireframe){
 		final double jro = JOINT_RADIUS_OUTER;
 		final double jri = JOINT_RADIUS_INNER;
 		Area area = new Area(new Ellipse2D.Double(x-jro, y-jro, jro*2, jro*2));
 		g.setColor(color);
-		if(showWireframe){
+		if(wireframe){
 			g.draw(area);
 		}else{
 			area.subtract(new Area(new Ellipse2D.Double(x-jri, y-jri, jri*2, jri*2)));
@@ -391,6 +878,19 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 		repaint();
 	}
 	
+	/**
+	 * Set <i>detailThreshold</i> and draw again if it changed
+	 * 
+	 * @param threshold in pixels, clamped to 0 to <i>DETAIL_THRESHOLD_MAX</i>
+	 */
+	public void setDetailThreshold(double threshold){
+		// Negated so NaN gives 0 too
+		double newThreshold = !(threshold>0)?0:Math.min(threshold, DETAIL_THRESHOLD_MAX);
+		if(detailThreshold==newThreshold)return;
+		detailThreshold = newThreshold;
+		repaint();
+	}
+	
 	public void panned(double byx,double byy){
 		double invScale = getInvScale();
 		uanchorx += byx*invScale;
@@ -483,6 +983,34 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 			py=y;
 		}
 		
+		/**
+		 * Same as <i>map</i>, but for an object in a store
+		 * 
+		 * @param store
+		 * @param slot
+		 * @return
+		 */
+		public double map(ObjectStore store,int slot){
+			if(Bits.readBit(store.typeData[slot], FCObj.TYPE_CIRCLE)){
+				return Math.hypot(px-store.x[slot], py-store.y[slot])/Math.abs(store.w[slot]*0.5);
+			}else{
+				double px = this.px, py = this.py;
+				final double x = store.x[slot],
+						y = store.y[slot],
+						rx = Math.abs(store.w[slot]*0.5),
+						ry = Math.abs(store.h[slot]*0.5),
+						cr = store.cos[slot],
+						sr = store.sin[slot];
+				px -= x;
+				py -= y;
+				// Invert rotation
+				final double nx = px*cr+py*sr;
+				py = py*cr-px*sr;
+				px = nx;
+				return Math.hypot(px/rx, py/ry);
+			}
+		}
+		
 		@Override
 		public Double map(FCObj obj) {
 			int typeData = obj.getTypeData();
@@ -493,15 +1021,15 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 				double px = this.px, py = this.py;
 				final double x = obj.x,
 						y = obj.y,
-						rx = Math.abs(obj.w*0.5),
-						ry = Math.abs(obj.h*0.5),
-						r = -Math.toRadians(obj.r),// Invert rotation
-						cr = Math.cos(r),
-						sr = Math.sin(r);
+						rx = obj.getHalfWidth(),
+						ry = obj.getHalfHeight(),
+						cr = obj.getCos(),
+						sr = obj.getSin();
 				px -= x;
 				py -= y;
-				final double nx = px*cr-py*sr;
-				py = px*sr+py*cr;
+				// Invert rotation
+				final double nx = px*cr+py*sr;
+				py = py*cr-px*sr;
 				px = nx;
 				return Math.hypot(px/rx, py/ry);
 			}
@@ -522,21 +1050,57 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 	 */
 	public FCObj getSelectionPoint(int mx,int my){
 		int width = getWidth(), height = getHeight();
+		if(pixelPicking){
+			// Same order as painting
+			objDoc.sort(FCObj.Z_COMPARE);
+			pickBuffer.update(objDoc, objStore, anchorx, anchory, getScale(), width, height, showWireframe, detailThreshold);
+			int slot = pickBuffer.pick(mx, my);
+			return slot<0?null:objStore.get(slot);
+		}
 		double invScale = getInvScale();
 		final double wmx = (mx-width*0.5)*invScale+anchorx;
 		final double wmy = (my-height*0.5)*invScale+anchory;
 		return getSelectionPointWorld(wmx,wmy);
 	}
 	public FCObj getSelectionPointWorld(double wmx,double wmy){
-		ArrayList<FCObj> candidates = new ArrayList<>();
-		for(FCObj obj:objDoc){
-			if(obj.contains(wmx,wmy)){
-				candidates.add(obj);
+		final ObjectStore store = objStore;
+		final FCObj[] objs = store.objs;
+		final ModDistance distance = new ModDistance(wmx,wmy);
+		final IntList candidates = this.candidates;
+		candidates.clear();
+		grid.queryPoint(wmx, wmy, candidates);
+		FCObj best = null;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for(int j=0,n=candidates.size();j<n;j++){
+			int i = candidates.get(j);
+			if(store.contains(i, wmx, wmy)){
+				double d = distance.map(store, i);
+				// Same order as sorting, so NaN comes last
+				int order = best==null?-1:Double.compare(d, bestDistance);
+				// Ties go to what is painted first, cell order isn't stable
+				if(order<0||order==0&&paintsBefore(objs[i], best)){
+					best = objs[i];
+					bestDistance = d;
+				}
 			}
 		}
-		if(candidates.isEmpty())return null;
-		Mapping.sort(candidates, new ModDistance(wmx,wmy), Comparator.<Double>naturalOrder());
-		return candidates.get(0);
+		return best;
+	}
+	
+	/**
+	 * Is one object painted before another? Lower z first, then
+	 * the earlier line, objects not on a line go last
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static boolean paintsBefore(FCObj a,FCObj b){
+		if(a.z!=b.z)return a.z<b.z;
+		final TextSync textSync = Main.textSync;
+		if(textSync==null)return false;
+		// Compared unsigned so -1 goes last
+		return Integer.compareUnsigned(textSync.lineOf(a), textSync.lineOf(b))<0;
 	}
 	
 	public ArrayList<FCObj> getSelectionArea(){
@@ -564,29 +1128,31 @@ public class GraphicEditorPane extends JPanel implements KeyTracker {
 		return getSelectionAreaWorld(wmx,wmy,womx,womy);
 	}
 	public ArrayList<FCObj> getSelectionAreaWorld(double wmx,double wmy,double womx,double womy){
-		FCObj dummy = new FCObj();
-		dummy.type = "Empty";
-		dummy.x = (wmx+womx)*0.5;
-		dummy.y = (wmy+womy)*0.5;
-		dummy.w = wmx-womx;
-		dummy.h = wmy-womy;
-		ArrayList<FCObj> candidates = new ArrayList<>();
-		for(FCObj obj:objDoc){
-			if(dummy.intersects(obj)){
-				candidates.add(obj);
-			}
+		final ObjectStore store = objStore;
+		final FCObj[] objs = store.objs;
+		final double minx = Math.min(wmx, womx), miny = Math.min(wmy, womy),
+				maxx = Math.max(wmx, womx), maxy = Math.max(wmy, womy);
+		final IntList candidates = this.candidates, hits = this.hits;
+		candidates.clear();
+		hits.clear();
+		tree.query(minx, miny, maxx, maxy, candidates);
+		// Keep the order stable between drag events
+		candidates.sort();
+		Geometry.intersects(false, (minx+maxx)*0.5, (miny+maxy)*0.5, (maxx-minx)*0.5, (maxy-miny)*0.5, 1, 0,
+				store, candidates, hits);
+		ArrayList<FCObj> result = new ArrayList<>(hits.size());
+		for(int j=0,n=hits.size();j<n;j++){
+			result.add(objs[hits.get(j)]);
 		}
-		return candidates;
+		return result;
 	}
 	
 	public void setBackupSel(){
-		backupSel.clear();
-		backupSel.addAll(objSel);
+		objSel.backup();
 	}
 	
 	public void restoreBackupSel(){
-		objSel.clear();
-		objSel.addAll(backupSel);
+		objSel.restore();
 	}
 	
 	public void tryUndo(){
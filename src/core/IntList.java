@@ -0,0 +1,196 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Growable list of ints, stored in a plain int array
+ * <br>
+ * Copies share the array until one of them is changed,
+ * so copying is cheap no matter how long the list is
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class IntList {
+	
+	private static final int[] EMPTY = {};
+	
+	private int[] data = EMPTY;
+	private int size;
+	/**
+	 * If true, the array might be used by another list too,
+	 * so it must be copied before changing it
+	 */
+	private boolean shared;
+	
+	/**
+	 * Default constructor, makes an empty list
+	 */
+	public IntList(){
+		
+	}
+	
+	/**
+	 * Copy constructor
+	 * 
+	 * @param source list to copy
+	 */
+	public IntList(IntList source){
+		copyFrom(source);
+	}
+	
+	/**
+	 * Make this a copy of another list, sharing its array
+	 * 
+	 * @param source
+	 */
+	public void copyFrom(IntList source){
+		if(source==this)return;
+		data = source.data;
+		size = source.size;
+		if(data!=EMPTY)shared = source.shared = true;
+		else shared = false;
+	}
+	
+	/**
+	 * Make sure the array can be changed and
+	 * has room for at least this many values
+	 */
+	private void own(int capacity){
+		if(shared||capacity>data.length){
+			int length = Math.max(capacity, shared?size:data.length+(data.length>>1)+4);
+			data = Arrays.copyOf(data, length);
+			shared = false;
+		}
+	}
+	
+	/**
+	 * @return number of values
+	 */
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return size==0;
+	}
+	
+	/**
+	 * Get a value
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public int get(int index){
+		if(index>=size)throw new IndexOutOfBoundsException("Index "+index+" out of bounds for length "+size);
+		return data[index];
+	}
+	
+	/**
+	 * Set a value
+	 * 
+	 * @param index
+	 * @param value
+	 */
+	public void set(int index,int value){
+		if(index>=size)throw new IndexOutOfBoundsException("Index "+index+" out of bounds for length "+size);
+		own(size);
+		data[index] = value;
+	}
+	
+	/**
+	 * Add a value to the end
+	 * 
+	 * @param value
+	 */
+	public void add(int value){
+		own(size+1);
+		data[size++] = value;
+	}
+	
+	/**
+	 * Remove everything
+	 */
+	public void clear(){
+		if(shared){
+			data = EMPTY;
+			shared = false;
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Sort the values in increasing order
+	 */
+	public void sort(){
+		own(size);
+		Arrays.sort(data, 0, size);
+	}
+	
+	/**
+	 * Find a value
+	 * 
+	 * @param value
+	 * @return index of the first match, or -1 if not found
+	 */
+	public int indexOf(int value){
+		final int[] data = this.data;
+		for(int i=0,n=size;i<n;i++){
+			if(data[i]==value)return i;
+		}
+		return -1;
+	}
+	
+	public boolean contains(int value){
+		return indexOf(value)>=0;
+	}
+	
+	/**
+	 * Copy the values into an array
+	 * 
+	 * @param dest array to copy to
+	 * @param offset where in the array to start
+	 */
+	public void copyTo(int[] dest,int offset){
+		System.arraycopy(data, 0, dest, offset, size);
+	}
+	
+	/**
+	 * @return a new array with the values
+	 */
+	public int[] toArray(){
+		return Arrays.copyOf(data, size);
+	}
+	
+	public boolean equals(Object o){
+		if(o==this)return true;
+		if(!(o instanceof IntList))return false;
+		IntList other = (IntList) o;
+		if(size!=other.size)return false;
+		if(data==other.data)return true;
+		for(int i=0;i<size;i++){
+			if(data[i]!=other.data[i])return false;
+		}
+		return true;
+	}
+	
+	public int hashCode(){
+		int result = 1;
+		for(int i=0;i<size;i++){
+			result = 31*result+data[i];
+		}
+		return result;
+	}
+	
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		for(int i=0;i<size;i++){
+			if(i>0)sb.append(", ");
+			sb.append(data[i]);
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+	
+}
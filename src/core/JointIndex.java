@@ -0,0 +1,348 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Index of the joint points of every jointable piece in an
+ * {@link ObjectStore}, used to find which pieces could be jointed
+ * <br>
+ * Joint points are where {@link GraphicEditorPane} draws them: both
+ * ends of a rod, the center and corners of a goal rectangle, and the
+ * center, rim and inner points of a wheel or goal circle
+ * <br>
+ * Points are kept in a hash table of grid cells, so finding what is
+ * near a point only looks at a few cells no matter how many pieces
+ * there are, cells are clamped so points very far away still work
+ * <br>
+ * Kept up to date as a listener of the store
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class JointIndex implements ObjectStore.Listener {
+	
+	/**
+	 * Default width and height of a cell, in world units
+	 */
+	public static final double DEFAULT_CELL_SIZE = 16;
+	/**
+	 * Default distance two joint points can be apart and still be jointed
+	 */
+	public static final double DEFAULT_TOLERANCE = 1;
+	/**
+	 * Most joint points a piece can have
+	 */
+	public static final int MAX_POINTS = 9;
+	/**
+	 * Furthest cell from the origin on each axis, points further
+	 * away share the cells at the edge
+	 */
+	public static final int MAX_CELL = 1<<30;
+	
+	/**
+	 * Width and height of a cell, in world units
+	 */
+	public final double cellSize;
+	private final double invCellSize;
+	
+	// Point ids in each cell, by cell coordinates
+	private final CellTable cells = new CellTable();
+	
+	// Per slot, point ids are slot*MAX_POINTS plus the point's index
+	private int[] pointCount = new int[0];
+	private double[] px = new double[0], py = new double[0];
+	
+	// For removing duplicates from query results
+	private int[] marks = new int[0];
+	private int mark;
+	
+	// Reused buffer of points
+	private final double[] points = new double[MAX_POINTS*2];
+	
+	public JointIndex(){
+		this(DEFAULT_CELL_SIZE);
+	}
+	
+	/**
+	 * @param cellSize width and height of a cell, in world units
+	 */
+	public JointIndex(double cellSize){
+		this.cellSize = cellSize;
+		invCellSize = 1/cellSize;
+	}
+	
+	/**
+	 * Compute the joint points of the piece in a slot, in world space
+	 * 
+	 * @param store
+	 * @param slot
+	 * @param out x and y of each point are put in this, one after the
+	 * other, must have room for <i>MAX_POINTS</i> points
+	 * @return number of points, 0 if it can't be jointed
+	 */
+	public static int getPoints(ObjectStore store,int slot,double[] out){
+		final int typeData = store.typeData[slot];
+		if(!Bits.readBit(typeData, FCObj.TYPE_JOINTABLE))return 0;
+		final double x = store.x[slot], y = store.y[slot],
+				w = store.w[slot], h = store.h[slot],
+				c = store.cos[slot], s = store.sin[slot];
+		final boolean iscircle = Bits.readBit(typeData, FCObj.TYPE_CIRCLE);
+		final boolean isrod = Bits.readBit(typeData, FCObj.TYPE_DESIGN)&&!iscircle&&!Bits.readBit(typeData, FCObj.TYPE_GOAL);
+		// Same sizes as the outline drawn in the editor
+		final double iw = Math.abs(w-8), ih = Math.abs(h-8);
+		final double ow = isrod?w:Math.max(w, iw+2), oh = isrod?h:Math.max(h, ih+2);
+		int n = 0;
+		if(iscircle){
+			n = putPoint(out, n, x, y, c, s, 0, 0);
+			n = putPoint(out, n, x, y, c, s, ow*0.5, 0);
+			n = putPoint(out, n, x, y, c, s, ow*-0.5, 0);
+			n = putPoint(out, n, x, y, c, s, 0, oh*0.5);
+			n = putPoint(out, n, x, y, c, s, 0, oh*-0.5);
+			if(iw>40){
+				n = putPoint(out, n, x, y, c, s, 20, 0);
+				n = putPoint(out, n, x, y, c, s, -20, 0);
+			}
+			if(ih>40){
+				n = putPoint(out, n, x, y, c, s, 0, 20);
+				n = putPoint(out, n, x, y, c, s, 0, -20);
+			}
+		}else if(isrod){
+			n = putPoint(out, n, x, y, c, s, ow*0.5, 0);
+			n = putPoint(out, n, x, y, c, s, ow*-0.5, 0);
+		}else{
+			n = putPoint(out, n, x, y, c, s, 0, 0);
+			n = putPoint(out, n, x, y, c, s, ow*0.5, oh*0.5);
+			n = putPoint(out, n, x, y, c, s, ow*-0.5, oh*0.5);
+			n = putPoint(out, n, x, y, c, s, ow*0.5, -oh*0.5);
+			n = putPoint(out, n, x, y, c, s, ow*-0.5, -oh*0.5);
+		}
+		return n;
+	}
+	
+	/**
+	 * Rotate and translate a point from object space, and put it
+	 */
+	private static int putPoint(double[] out,int n,double x,double y,double c,double s,double lx,double ly){
+		out[n<<1] = x+lx*c-ly*s;
+		out[(n<<1)|1] = y+lx*s+ly*c;
+		return n+1;
+	}
+	
+	/**
+	 * Cell coordinate on one axis, clamped to <i>MAX_CELL</i> so it
+	 * can't overflow, NaN gives 0
+	 */
+	private int cellOf(double v){
+		final double c = Math.floor(v*invCellSize);
+		return c>=MAX_CELL?MAX_CELL:c<=-MAX_CELL?-MAX_CELL:(int)c;
+	}
+	
+	private void ensureSlots(int n){
+		if(pointCount.length<n){
+			int length = Math.max(n, pointCount.length*2);
+			pointCount = Arrays.copyOf(pointCount, length);
+			marks = Arrays.copyOf(marks, length);
+			px = Arrays.copyOf(px, length*MAX_POINTS);
+			py = Arrays.copyOf(py, length*MAX_POINTS);
+		}
+	}
+	
+	private void insert(ObjectStore store,int slot){
+		ensureSlots(slot+1);
+		final double[] points = this.points;
+		final int n = getPoints(store, slot, points);
+		int count = 0;
+		for(int k=0;k<n;k++){
+			final double x = points[k<<1], y = points[(k<<1)|1];
+			// Points which aren't anywhere can't be jointed
+			if(!(Math.abs(x)<Double.POSITIVE_INFINITY&&Math.abs(y)<Double.POSITIVE_INFINITY))continue;
+			final int id = slot*MAX_POINTS+count;
+			px[id] = x;
+			py[id] = y;
+			count++;
+			cells.add(cellOf(x), cellOf(y), id);
+		}
+		pointCount[slot] = count;
+	}
+	
+	private void delete(int slot){
+		if(slot>=pointCount.length)return;
+		for(int k=0,n=pointCount[slot];k<n;k++){
+			final int id = slot*MAX_POINTS+k;
+			cells.remove(cellOf(px[id]), cellOf(py[id]), id);
+		}
+		pointCount[slot] = 0;
+	}
+	
+	@Override
+	public void added(ObjectStore store,int slot){
+		insert(store, slot);
+	}
+	
+	@Override
+	public void removed(ObjectStore store,int slot){
+		delete(slot);
+	}
+	
+	@Override
+	public void changed(ObjectStore store,int slot){
+		delete(slot);
+		insert(store, slot);
+	}
+	
+	@Override
+	public void cleared(ObjectStore store){
+		cells.clear();
+		Arrays.fill(pointCount, 0);
+	}
+	
+	/**
+	 * Find the pieces with a joint point near a point
+	 * 
+	 * @param x
+	 * @param y
+	 * @param tolerance how far away a joint point can be
+	 * @param exclude slot to leave out, -1 for none
+	 * @param result slots are added to this, each only once
+	 */
+	public void query(double x,double y,double tolerance,int exclude,IntList result){
+		if(++mark==0){
+			Arrays.fill(marks, 0);
+			mark = 1;
+		}
+		if(exclude>=0&&exclude<marks.length)marks[exclude] = mark;
+		queryMarked(x, y, tolerance, result);
+	}
+	
+	private void queryMarked(double x,double y,double tolerance,IntList result){
+		// Negated so NaN finds nothing too
+		if(!(tolerance>=0))return;
+		final double t2 = tolerance*tolerance;
+		final int x0 = cellOf(x-tolerance), y0 = cellOf(y-tolerance),
+				x1 = cellOf(x+tolerance), y1 = cellOf(y+tolerance);
+		// In longs, the clamped span on one axis can be 2^31 cells
+		final CellTable cells = this.cells;
+		if(((long)x1-x0+1)*((long)y1-y0+1)>cells.capacity()){
+			// Most of those cells would be empty, look at the used ones instead
+			for(int i=0,n=cells.capacity();i<n;i++){
+				if(cells.isUsed(i))queryCell(i, x, y, t2, result);
+			}
+			return;
+		}
+		for(int cx=x0;cx<=x1;cx++){
+			for(int cy=y0;cy<=y1;cy++){
+				int i = cells.find(cx, cy);
+				if(i>=0)queryCell(i, x, y, t2, result);
+			}
+		}
+	}
+	
+	private void queryCell(int i,double x,double y,double t2,IntList result){
+		final int[] ids = cells.values(i);
+		for(int j=0,n=cells.count(i);j<n;j++){
+			final int id = ids[j];
+			final int slot = id/MAX_POINTS;
+			if(marks[slot]==mark)continue;
+			final double dx = px[id]-x, dy = py[id]-y;
+			if(dx*dx+dy*dy<=t2){
+				marks[slot] = mark;
+				result.add(slot);
+			}
+		}
+	}
+	
+	/**
+	 * Find the pieces which could be jointed to the piece in a slot,
+	 * those with a joint point near one of its joint points
+	 * 
+	 * @param slot
+	 * @param tolerance how far apart joint points can be
+	 * @param result slots are added to this, each only once
+	 */
+	public void getCandidates(int slot,double tolerance,IntList result){
+		if(slot>=pointCount.length)return;
+		if(++mark==0){
+			Arrays.fill(marks, 0);
+			mark = 1;
+		}
+		marks[slot] = mark;
+		for(int k=0,n=pointCount[slot];k<n;k++){
+			final int id = slot*MAX_POINTS+k;
+			queryMarked(px[id], py[id], tolerance, result);
+		}
+	}
+	
+	/**
+	 * Joint design pieces to every candidate found by <i>getCandidates</i>,
+	 * like the game the piece with the higher index gets the lower index
+	 * in its list, joints already there are kept
+	 * <br>
+	 * Changed pieces are updated in the store
+	 * 
+	 * @param store store this is listening to
+	 * @param slots pieces to joint, null for all
+	 * @param tolerance how far apart joint points can be
+	 * @return number of joints added
+	 */
+	public int autoJoint(ObjectStore store,IntList slots,double tolerance){
+		if(slots==null){
+			slots = new IntList();
+			for(int i=0;i<store.limit;i++){
+				if(store.objs[i]!=null)slots.add(i);
+			}
+		}
+		final IntList candidates = new IntList();
+		int added = 0;
+		for(int j=0,n=slots.size();j<n;j++){
+			final int slot = slots.get(j);
+			if(!Bits.readBit(store.typeData[slot], FCObj.TYPE_DESIGN))continue;
+			candidates.clear();
+			getCandidates(slot, tolerance, candidates);
+			for(int k=0,m=candidates.size();k<m;k++){
+				final int other = candidates.get(k);
+				if(!Bits.readBit(store.typeData[other], FCObj.TYPE_DESIGN))continue;
+				final FCObj a = store.objs[slot], b = store.objs[other];
+				if(a.z<0||b.z<0||a.z==b.z)continue;
+				final FCObj higher = a.z>b.z?a:b, lower = a.z>b.z?b:a;
+				if(higher.joints.contains(lower.z))continue;
+				higher.joints.add(lower.z);
+				store.update(higher);
+				added++;
+			}
+		}
+		return added;
+	}
+	
+	public String toString(){
+		return "JointIndex("+cells.size()+" cells)";
+	}
+	
+	/**
+	 * Main method, used only for testing
+	 * 
+	 * @param args ignored
+	 */
+	public static void main(String[] args){
+		System.out.println("--- Far away queries ---");
+		final IntList result = new IntList();
+		JointIndex index = new JointIndex();
+		long start = System.nanoTime();
+		index.query(0, 1e300, 1e11, -1, result);
+		long millis = (System.nanoTime()-start)/1_000_000;
+		System.out.println("empty, y=1e300, tolerance=1e11: "+result.size()+" found in "+millis+"ms (expected 0, well under 1000ms)");
+		ObjectStore store = new ObjectStore();
+		index = new JointIndex();
+		store.addListener(index);
+		store.add(new FCObj("WoodRod#0 (1e11, 1e300), (40, 4), 0", "fcml"));
+		store.add(new FCObj("WoodRod#1 (0, 0), (40, 4), 0", "fcml"));
+		result.clear();
+		start = System.nanoTime();
+		index.query(1e11, 1e300, 1e11, -1, result);
+		millis = (System.nanoTime()-start)/1_000_000;
+		System.out.println("2 rods, y=1e300, tolerance=1e11: "+result.size()+" found in "+millis+"ms (expected 1, well under 1000ms)");
+		result.clear();
+		index.query(20, 0, 1, -1, result);
+		System.out.println("2 rods, near the end of the rod at 0,0: "+result.size()+" found (expected 1)");
+	}
+	
+}
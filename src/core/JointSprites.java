@@ -0,0 +1,113 @@
+package core;
+
+import java.awt.*;
+import java.awt.image.*;
+
+/**
+ * Joint glyphs drawn once for a zoom level, then copied to where
+ * each joint goes instead of building the shape every time
+ * <br>
+ * Each colour has a sprite for every quarter pixel offset, so joints
+ * still land between pixels like a shape drawn there would
+ * <br>
+ * Once prepared, sprites can be drawn from several threads at once
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class JointSprites {
+	
+	/**
+	 * Positions per pixel on each axis which get their own sprite
+	 */
+	public static final int SUBPIXEL = 4;
+	
+	/**
+	 * Colours which have sprites
+	 */
+	private final Color[] colors;
+	/**
+	 * Sprites by colour then offset, <i>x</i> offset times
+	 * <i>SUBPIXEL</i> plus <i>y</i> offset
+	 */
+	private final BufferedImage[][] sprites;
+	/**
+	 * Pixels from a sprite's corner to the joint center, with no offset
+	 */
+	private int origin;
+	
+	// What the sprites were drawn with
+	private double scale = Double.NaN;
+	private boolean wireframe;
+	
+	/**
+	 * @param colors colours to make sprites for
+	 */
+	public JointSprites(Color... colors){
+		this.colors = colors.clone();
+		sprites = new BufferedImage[colors.length][SUBPIXEL*SUBPIXEL];
+	}
+	
+	/**
+	 * Draw the sprites again if the zoom level or style changed,
+	 * must be called before drawing and not at the same time
+	 * 
+	 * @param scale world to pixel scale
+	 * @param wireframe draw outlines instead of rings?
+	 */
+	public void prepare(double scale,boolean wireframe){
+		if(scale==this.scale&&wireframe==this.wireframe)return;
+		this.scale = scale;
+		this.wireframe = wireframe;
+		// Room for the shape, its outline and the offset
+		origin = (int)Math.ceil(GraphicEditorPane.JOINT_RADIUS_OUTER*scale+scale*0.5)+2;
+		final int size = origin*2+2;
+		for(int i=0;i<colors.length;i++){
+			for(int fx=0;fx<SUBPIXEL;fx++){
+				for(int fy=0;fy<SUBPIXEL;fy++){
+					BufferedImage sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+					Graphics2D g = sprite.createGraphics();
+					g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+					g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+					g.translate(origin+(double)fx/SUBPIXEL, origin+(double)fy/SUBPIXEL);
+					g.scale(scale, scale);
+					GraphicEditorPane.drawJointShape(g, colors[i], 0, 0, wireframe);
+					g.dispose();
+					sprites[i][fx*SUBPIXEL+fy] = sprite;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Draw a joint centered on a point
+	 * 
+	 * @param g where to draw, in pixels, with no transform
+	 * @param color
+	 * @param x in pixels
+	 * @param y in pixels
+	 * @return false if there is no sprite for the colour, nothing was drawn
+	 */
+	public boolean draw(Graphics2D g,Color color,double x,double y){
+		int index = -1;
+		for(int i=0;i<colors.length;i++){
+			if(colors[i]==color){
+				index = i;
+				break;
+			}
+		}
+		if(index<0)return false;
+		// Also true for NaN, none of it would be seen anyway
+		final double limit = Integer.MAX_VALUE/(SUBPIXEL*2);
+		if(!(Math.abs(x)<limit&&Math.abs(y)<limit))return true;
+		final int qx = (int)Math.round(x*SUBPIXEL), qy = (int)Math.round(y*SUBPIXEL);
+		final int fx = Math.floorMod(qx, SUBPIXEL), fy = Math.floorMod(qy, SUBPIXEL);
+		g.drawImage(sprites[index][fx*SUBPIXEL+fy], Math.floorDiv(qx, SUBPIXEL)-origin, Math.floorDiv(qy, SUBPIXEL)-origin, null);
+		return true;
+	}
+	
+	public String toString(){
+		return "JointSprites("+colors.length+" colors, scale "+scale+(wireframe?", wireframe":"")+")";
+	}
+	
+}
@@ -3,6 +3,7 @@ package core;
 import java.util.*;
 import java.io.*;
 import java.lang.reflect.*;
+import java.util.concurrent.*;
 import java.awt.*;
 import java.awt.color.*;
 import java.awt.datatransfer.*;
@@ -57,18 +58,43 @@ public class Main {
 	 * Undo manager object which tracks changes and handles undo/redo
 	 */
 	public static TimedUndoManager textUndo;
+	/**
+	 * Tracks which object each line of the text document is
+	 */
+	public static TextSync textSync;
+	/**
+	 * Remembers what recently seen lines parse to
+	 */
+	public static final ParseCache parseCache = new ParseCache();
 	/**
 	 * Editor internal document
 	 */
 	public static ArrayList<FCObj> objDoc;
+	/**
+	 * Columnar copy of <i>objDoc</i>, kept in sync with it
+	 */
+	public static ObjectStore objStore;
 	/**
 	 * Editor internal selection
 	 */
-	public static ArrayList<FCObj> objSel;
+	public static Selection objSel;
 	/**
 	 * Changes every update, used to track idling
 	 */
 	public static long ticker;
+	/**
+	 * Changes whenever the text document does, a background parse
+	 * is only used if this didn't change while it ran
+	 */
+	public static long parseGeneration;
+	/**
+	 * Waits until the user is idle before parsing the text document
+	 */
+	public static javax.swing.Timer parseTimer;
+	/**
+	 * Background thread which parses the text document
+	 */
+	public static ExecutorService parseExecutor;
 	
 	public static final PrintStream console = System.out;
 
@@ -87,8 +113,18 @@ public class Main {
 		textEditor = new TextEditorPane(textDoc,"",150,150);
 		textSel = textEditor.getSelectedText();
 		objDoc = new ArrayList<>();
-		objSel = new ArrayList<>();
+		objStore = new ObjectStore();
+		objSel = new Selection();
 		textUndo = new TimedUndoManager();
+		textSync = new TextSync(textDoc);
+		textSync.cache = parseCache;
+		parseTimer = new javax.swing.Timer((int)IDLE_MS, (ActionEvent e)->startParse());
+		parseTimer.setRepeats(false);
+		parseExecutor = Executors.newSingleThreadExecutor((Runnable r)->{
+			Thread thread = new Thread(r, "Parser");
+			thread.setDaemon(true);
+			return thread;
+		});
 		// Do layout
 		textEditorScroll.setViewportView(textEditor);
 		splitPane.add(graphicEditor);
@@ -96,6 +132,10 @@ public class Main {
 		frame.add(splitPane);
 		// Set fields and initialize
 		graphicEditor.objDoc = objDoc;
+		graphicEditor.objStore = objStore;
+		objStore.addListener(graphicEditor.grid);
+		objStore.addListener(graphicEditor.tree);
+		objStore.addListener(graphicEditor.jointIndex);
 		graphicEditor.objSel = objSel;
 		graphicEditor.setBackupSel();
 		textUndo.setLimit(100000);
@@ -119,17 +159,17 @@ public class Main {
 
 			@Override
 			public void insertUpdate(DocumentEvent e) {
-				if(allowUpdateObjFromText())updateObjDocumentFromText();
+				textChanged(e);
 			}
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
-				if(allowUpdateObjFromText())updateObjDocumentFromText();
+				textChanged(e);
 			}
 
 			@Override
 			public void changedUpdate(DocumentEvent e) {
-				if(allowUpdateObjFromText())updateObjDocumentFromText();
+				textChanged(e);
 			}
 			
 		});
@@ -149,13 +189,18 @@ public class Main {
 	 * If true, forces <i>allowUpdateObjFromText()</i> to return true
 	 */
 	public static boolean overrideUoft;
+	/**
+	 * If true, forces <i>allowUpdateObjFromText()</i> to return false,
+	 * takes priority over <i>overrideUoft</i>
+	 */
+	public static boolean suppressUoft;
 	/**
 	 * Should we allow updating object from text?
 	 * 
 	 * @return
 	 */
 	public static boolean allowUpdateObjFromText(){
-		return overrideUoft||textEditor.isFocusOwner();
+		return !suppressUoft&&(overrideUoft||textEditor.isFocusOwner());
 	}
 	
 	public static void addGraphicForwardListeners(){
@@ -243,6 +288,10 @@ public class Main {
 	
 	public static void parseTextTo(String source,ArrayList<FCObj> target,String format){
 		if(source==null)return;
+		if("fcml".equals(format)){
+			BulkParser.parseTextTo(source, target, parseCache);
+			return;
+		}
 		for(String line:source.split("\n")){
 			try{
 				target.add(new FCObj(line,format));
@@ -258,26 +307,153 @@ public class Main {
 	}
 	
 	public static void updateObjDocumentFromText(){
-		String text = textEditor.getText();
+		// Anything parsing in the background is replaced by this
+		parseGeneration++;
 		objDoc.clear();
-		parseTextTo(text,objDoc,"fcml");
+		textSync.reparseAll(objDoc);
+		objStore.clear();
+		objStore.addAll(objDoc);
 		ticker++;
 		graphicEditor.repaint();
 	}
 	
-	public static void updateObjSelectionFromText(){
-		String text = textEditor.getSelectedText();
-		objSel.clear();
-		parseTextTo(text,objSel,"fcml");
-		int sn = objSel.size();
-		// Ensure objects are same reference
-		HashMap<FCObj,FCObj> swap = new HashMap<>();
+	/**
+	 * Called whenever the text document changes, any parse
+	 * still running is now out of date
+	 * 
+	 * @param e the change
+	 */
+	public static void textChanged(DocumentEvent e){
+		ticker++;
+		parseGeneration++;
+		// Touched lines don't match until parsed again
+		textSync.update(e);
+		if(allowUpdateObjFromText())scheduleParse();
+	}
+	
+	/**
+	 * Parse the text document in the background once the user
+	 * has been idle for <i>IDLE_MS</i>
+	 * <br>
+	 * Calling this again before then restarts the wait, so a burst
+	 * of edits is only parsed once
+	 */
+	public static void scheduleParse(){
+		parseTimer.restart();
+	}
+	
+	/**
+	 * Take a snapshot of the dirty lines of the text document and
+	 * parse them on the background thread, the result is only used
+	 * if the text didn't change in the meantime
+	 */
+	public static void startParse(){
+		final long generation = parseGeneration;
+		final String text = textSync.dirtyText();
+		if(text==null)return;
+		parseExecutor.execute(()->{
+			FCObj[] parsed = BulkParser.parseLines(text, parseCache);
+			SwingUtilities.invokeLater(()->finishParse(generation, parsed));
+		});
+	}
+	
+	/**
+	 * Publish the result of a background parse, must be
+	 * called on the event dispatch thread
+	 * 
+	 * @param generation value of <i>parseGeneration</i> when the snapshot was taken
+	 * @param parsed object for each dirty line of the snapshot
+	 */
+	public static void finishParse(long generation,FCObj[] parsed){
+		if(generation!=parseGeneration){
+			// Out of date, try again once idle
+			scheduleParse();
+			return;
+		}
+		publishParse(parsed);
+		// Selection was matched against the old objects
+		if(allowUpdateObjFromText())updateObjSelectionFromText();
+		graphicEditor.repaint();
+	}
+	
+	/**
+	 * Put a parse of the dirty lines in place, objects which
+	 * changed are swapped out of <i>objDoc</i> and <i>objStore</i>
+	 * 
+	 * @param parsed object for each dirty line
+	 */
+	public static void publishParse(FCObj[] parsed){
+		ArrayList<FCObj> removed = new ArrayList<>();
+		ArrayList<FCObj> added = new ArrayList<>();
+		if(textSync.reconcile(parsed, removed, added)){
+			if(!removed.isEmpty()){
+				Set<FCObj> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+				gone.addAll(removed);
+				objDoc.removeIf(gone::contains);
+				objStore.removeAll(removed);
+				for(FCObj obj:removed){
+					objSel.remove(obj);
+				}
+			}
+			insertInLineOrder(added);
+			objStore.addAll(added);
+		}
+		ticker++;
+	}
+	
+	/**
+	 * Add new objects to <i>objDoc</i> in line order, each goes right
+	 * after the object on the closest line before it, so editing a line
+	 * doesn't move its object within the draw order or the text
+	 * 
+	 * @param added objects which are on lines in <i>textSync</i>
+	 */
+	public static void insertInLineOrder(Collection<FCObj> added){
+		if(added.isEmpty())return;
+		Set<FCObj> isAdded = Collections.newSetFromMap(new IdentityHashMap<>());
+		isAdded.addAll(added);
+		Set<FCObj> inDoc = Collections.newSetFromMap(new IdentityHashMap<>());
+		inDoc.addAll(objDoc);
+		// New objects after each object already in objDoc, null key for before all of them
+		IdentityHashMap<FCObj,ArrayList<FCObj>> after = new IdentityHashMap<>();
+		FCObj anchor = null;
+		for(FCObj obj:textSync.lines){
+			if(obj==null)continue;
+			if(isAdded.contains(obj)){
+				after.computeIfAbsent(anchor, (FCObj key)->new ArrayList<>()).add(obj);
+			}else if(inDoc.contains(obj)){
+				anchor = obj;
+			}
+		}
+		ArrayList<FCObj> order = new ArrayList<>(objDoc.size()+added.size());
+		ArrayList<FCObj> group = after.get(null);
+		if(group!=null)order.addAll(group);
 		for(FCObj obj:objDoc){
-			swap.put(obj, obj);
+			order.add(obj);
+			group = after.get(obj);
+			if(group!=null)order.addAll(group);
 		}
-		for(int i=0;i<sn;i++){
-			FCObj obj = swap.get(objSel.get(i));
-			if(obj!=null)objSel.set(i, obj);
+		objDoc.clear();
+		objDoc.addAll(order);
+	}
+	
+	/**
+	 * Select the objects on the lines the text selection touches
+	 * <br>
+	 * Lines are looked up directly in <i>textSync</i>, so nothing is
+	 * parsed, and identical objects on different lines stay distinct
+	 */
+	public static void updateObjSelectionFromText(){
+		objSel.clear();
+		int start = textEditor.getSelectionStart(), end = textEditor.getSelectionEnd();
+		// Until the lines are parsed they can't be matched up, it will be done again after
+		if(start<end){
+			Element root = textDoc.getDefaultRootElement();
+			int first = root.getElementIndex(start);
+			int last = root.getElementIndex(end);
+			// Ending right at the start of a line doesn't include it
+			if(last>first&&root.getElement(last).getStartOffset()==end)last--;
+			if(textSync.isClean(first, last))textSync.getObjects(first, last, objSel);
 		}
 		ticker++;
 		graphicEditor.setBackupSel();
@@ -290,55 +466,58 @@ public class Main {
 	}
 	
 	public static void updateTextDocumentFromObj(){
+		// Lines typed since the last parse would be lost, parse them now instead of waiting
+		final String dirty = textSync.dirtyText();
+		if(dirty!=null){
+			parseGeneration++;
+			publishParse(BulkParser.parseLines(dirty, parseCache));
+		}
 		StringBuilder sb = new StringBuilder();
+		FCMLParser parser = new FCMLParser();
+		int kept = 0;
 		for(String line:textEditor.getText().split("\n")){
-			try{
-				// Dummy object
-				new FCObj(line,"fcml");
-			}catch(Exception e){
+			if(parseCache.lookup(line, parser)==null){
 				sb.append(line);
 				sb.append('\n');
+				kept++;
 			}
 		}
 		for(FCObj obj:objDoc){
-			sb.append(obj.toString("fcml"));
+			obj.appendTo(sb, "fcml");
 			sb.append('\n');
 		}
+		objStore.sync(objDoc);
+		suppressUoft = true;
 		textEditor.setText(sb.toString());
+		suppressUoft = false;
+		// Lines are already known, no need to parse them again
+		textSync.assign(kept, objDoc);
 		ticker++;
 		textEditor.repaint();
 	}
 	
+	/**
+	 * Select the lines of the selected objects, only possible
+	 * if no other objects are on lines in between
+	 */
 	public static void updateTextSelectionFromObj(){
 		graphicEditor.setBackupSel();
 		int sn = objSel.size();
 		if(sn>0){
-			ArrayList<FCObj> sortedSel = new ArrayList<>(objSel);
-			Mapping.sort(sortedSel, (FCObj value)->objDoc.indexOf(value), Comparator.<Integer>naturalOrder());
-			int i = 0;
-			FCObj ref = sortedSel.get(i);
-			int first = 0;
-			boolean chain = false;
-			int pos = 0;
-			for(String line:textEditor.getText().split("\n")){
-				try{
-					FCObj other = new FCObj(line,"fcml");
-					if(ref.equals(other)){
-						if(!chain)first = pos;
-						chain = true;
-						i++;
-						if(i==sn){
-							textEditor.select(first, pos+line.length());
-							break;
-						}
-						ref = sortedSel.get(i);
-					}else if(chain){
-						break;
-					}
-				}catch(Exception e){
-					
+			int first = Integer.MAX_VALUE, last = -1;
+			for(FCObj obj:objSel){
+				int line = textSync.lineOf(obj);
+				if(line<0){
+					last = -1;
+					break;
 				}
-				pos += line.length()+1;
+				first = Math.min(first, line);
+				last = Math.max(last, line);
+			}
+			if(last>=0&&textSync.isClean(first, last)&&textSync.countObjects(first, last)==sn){
+				Element root = textDoc.getDefaultRootElement();
+				// Newline is not part of the line
+				textEditor.select(root.getElement(first).getStartOffset(), root.getElement(last).getEndOffset()-1);
 			}
 		}
 		ticker++;
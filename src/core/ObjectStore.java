@@ -0,0 +1,459 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Columnar copy of the editor's objects
+ * <br>
+ * Every object gets a slot, and each field is kept in its own
+ * primitive array indexed by slot, so loops over all objects
+ * (hit testing, selection, rendering) read contiguous memory
+ * instead of following a pointer per object
+ * <br>
+ * A slot id does not change for as long as the object stays in
+ * the store, freed slots are reused by objects added later, so
+ * loops must skip slots where <i>objs</i> is null
+ * <br>
+ * Joints of all objects are packed into one int array
+ * <br>
+ * Indices can be kept up to date by adding a {@link Listener}
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class ObjectStore {
+	
+	/**
+	 * Number of slots to start with
+	 */
+	public static final int INITIAL_CAPACITY = 64;
+	
+	/**
+	 * Gets told about every change to a store
+	 * 
+	 * @author EPICI
+	 * @version 1.0
+	 */
+	public static interface Listener {
+		
+		/**
+		 * An object was put in a slot
+		 * 
+		 * @param store
+		 * @param slot
+		 */
+		public void added(ObjectStore store,int slot);
+		
+		/**
+		 * The object in a slot was removed, the slot's
+		 * arrays still hold its last values
+		 * 
+		 * @param store
+		 * @param slot
+		 */
+		public void removed(ObjectStore store,int slot);
+		
+		/**
+		 * The values in a slot changed
+		 * 
+		 * @param store
+		 * @param slot
+		 */
+		public void changed(ObjectStore store,int slot);
+		
+		/**
+		 * Everything was removed
+		 * 
+		 * @param store
+		 */
+		public void cleared(ObjectStore store);
+		
+	}
+	
+	/**
+	 * Object in each slot, null if the slot is free
+	 */
+	public FCObj[] objs;
+	/**
+	 * Center (x,y), dimensions (w,h), rotation degrees (r) for each slot
+	 */
+	public double[] x,y,w,h,r;
+	/**
+	 * Cosine and sine of the rotation for each slot
+	 */
+	public double[] cos,sin;
+	/**
+	 * Axis aligned bounding box for each slot, which contains
+	 * the whole shape
+	 */
+	public double[] minx,miny,maxx,maxy;
+	/**
+	 * Type data (flags) for each slot
+	 */
+	public int[] typeData;
+	/**
+	 * z value for each slot
+	 */
+	public int[] z;
+	/**
+	 * Where the joints of each slot start in <i>jointData</i>
+	 */
+	public int[] jointStart;
+	/**
+	 * How many joints each slot has
+	 */
+	public int[] jointCount;
+	/**
+	 * Room for joints each slot has in <i>jointData</i>
+	 */
+	public int[] jointCapacity;
+	/**
+	 * Joints of all slots, packed
+	 */
+	public int[] jointData = new int[INITIAL_CAPACITY];
+	/**
+	 * Length of the used part of <i>jointData</i>
+	 */
+	public int jointUsed;
+	/**
+	 * Number of entries in the used part of <i>jointData</i>
+	 * which no slot owns anymore
+	 */
+	public int jointGarbage;
+	/**
+	 * One past the highest slot in use, loops over all
+	 * slots can stop here
+	 */
+	public int limit;
+	/**
+	 * Number of objects
+	 */
+	public int size;
+	/**
+	 * Changes every time anything in the store changes
+	 */
+	public long version;
+	/**
+	 * Changes every time a level object (anything which isn't a
+	 * design piece) is added, removed or changed, design edits
+	 * leave it alone
+	 */
+	public long levelVersion;
+	
+	private int[] free = new int[INITIAL_CAPACITY];
+	private int freeCount;
+	private final ArrayList<Listener> listeners = new ArrayList<>();
+	
+	public ObjectStore(){
+		allocate(INITIAL_CAPACITY);
+	}
+	
+	private void allocate(int capacity){
+		objs = objs==null?new FCObj[capacity]:Arrays.copyOf(objs, capacity);
+		x = x==null?new double[capacity]:Arrays.copyOf(x, capacity);
+		y = y==null?new double[capacity]:Arrays.copyOf(y, capacity);
+		w = w==null?new double[capacity]:Arrays.copyOf(w, capacity);
+		h = h==null?new double[capacity]:Arrays.copyOf(h, capacity);
+		r = r==null?new double[capacity]:Arrays.copyOf(r, capacity);
+		cos = cos==null?new double[capacity]:Arrays.copyOf(cos, capacity);
+		sin = sin==null?new double[capacity]:Arrays.copyOf(sin, capacity);
+		minx = minx==null?new double[capacity]:Arrays.copyOf(minx, capacity);
+		miny = miny==null?new double[capacity]:Arrays.copyOf(miny, capacity);
+		maxx = maxx==null?new double[capacity]:Arrays.copyOf(maxx, capacity);
+		maxy = maxy==null?new double[capacity]:Arrays.copyOf(maxy, capacity);
+		typeData = typeData==null?new int[capacity]:Arrays.copyOf(typeData, capacity);
+		z = z==null?new int[capacity]:Arrays.copyOf(z, capacity);
+		jointStart = jointStart==null?new int[capacity]:Arrays.copyOf(jointStart, capacity);
+		jointCount = jointCount==null?new int[capacity]:Arrays.copyOf(jointCount, capacity);
+		jointCapacity = jointCapacity==null?new int[capacity]:Arrays.copyOf(jointCapacity, capacity);
+	}
+	
+	/**
+	 * Start telling a listener about changes, it is first
+	 * told about every object already here
+	 * 
+	 * @param listener
+	 */
+	public void addListener(Listener listener){
+		listeners.add(listener);
+		for(int i=0;i<limit;i++){
+			if(objs[i]!=null)listener.added(this, i);
+		}
+	}
+	
+	/**
+	 * Stop telling a listener about changes
+	 * 
+	 * @param listener
+	 */
+	public void removeListener(Listener listener){
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * @return number of slots there is room for right now
+	 */
+	public int capacity(){
+		return objs.length;
+	}
+	
+	/**
+	 * Get the object in a slot
+	 * 
+	 * @param slot
+	 * @return the object, or null if the slot is free
+	 */
+	public FCObj get(int slot){
+		return objs[slot];
+	}
+	
+	/**
+	 * Is the object in this store?
+	 * 
+	 * @param obj
+	 * @return
+	 */
+	public boolean has(FCObj obj){
+		int slot = obj.id;
+		return slot>=0&&slot<limit&&objs[slot]==obj;
+	}
+	
+	/**
+	 * Add an object, giving it a slot which is also
+	 * put in its <i>id</i>
+	 * 
+	 * @param obj
+	 * @return the slot
+	 */
+	public int add(FCObj obj){
+		if(has(obj))throw new IllegalArgumentException("Object is already in the store");
+		int slot;
+		if(freeCount>0){
+			slot = free[--freeCount];
+		}else{
+			if(limit==objs.length)allocate(objs.length*2);
+			slot = limit++;
+		}
+		objs[slot] = obj;
+		jointStart[slot] = jointUsed;
+		jointCount[slot] = 0;
+		jointCapacity[slot] = 0;
+		obj.id = slot;
+		size++;
+		write(slot, obj);
+		if(isLevel(obj.typeData))levelVersion++;
+		for(Listener listener:listeners){
+			listener.added(this, slot);
+		}
+		return slot;
+	}
+	
+	/**
+	 * Add all the objects
+	 * 
+	 * @param objs
+	 */
+	public void addAll(Collection<FCObj> objs){
+		for(FCObj obj:objs){
+			add(obj);
+		}
+	}
+	
+	/**
+	 * Remove an object, freeing its slot
+	 * 
+	 * @param obj
+	 * @return true if it was in the store
+	 */
+	public boolean remove(FCObj obj){
+		if(!has(obj))return false;
+		int slot = obj.id;
+		objs[slot] = null;
+		obj.id = -1;
+		jointGarbage += jointCapacity[slot];
+		jointCount[slot] = 0;
+		jointCapacity[slot] = 0;
+		if(free.length==freeCount)free = Arrays.copyOf(free, freeCount*2);
+		free[freeCount++] = slot;
+		size--;
+		version++;
+		if(isLevel(typeData[slot]))levelVersion++;
+		for(Listener listener:listeners){
+			listener.removed(this, slot);
+		}
+		return true;
+	}
+	
+	/**
+	 * Remove all the objects
+	 * 
+	 * @param objs
+	 */
+	public void removeAll(Collection<FCObj> objs){
+		for(FCObj obj:objs){
+			remove(obj);
+		}
+	}
+	
+	/**
+	 * Remove everything
+	 */
+	public void clear(){
+		for(int i=0;i<limit;i++){
+			FCObj obj = objs[i];
+			if(obj!=null){
+				obj.id = -1;
+				objs[i] = null;
+			}
+		}
+		limit = size = freeCount = 0;
+		jointUsed = jointGarbage = 0;
+		version++;
+		levelVersion++;
+		for(Listener listener:listeners){
+			listener.cleared(this);
+		}
+	}
+	
+	/**
+	 * Copy the fields of an object in the store into its slot
+	 * again, call after changing it
+	 * 
+	 * @param obj
+	 * @return true if it was in the store
+	 */
+	public boolean update(FCObj obj){
+		if(!has(obj))return false;
+		int slot = obj.id;
+		// Only counts if it is or was a level object and it looks different
+		if(isLevel(typeData[slot])||isLevel(obj.typeData)){
+			if(x[slot]!=obj.x||y[slot]!=obj.y||w[slot]!=obj.w||h[slot]!=obj.h||r[slot]!=obj.r
+					||typeData[slot]!=obj.typeData||z[slot]!=obj.z)levelVersion++;
+		}
+		write(slot, obj);
+		for(Listener listener:listeners){
+			listener.changed(this, slot);
+		}
+		return true;
+	}
+	
+	/**
+	 * Make the store hold exactly these objects, objects which
+	 * are already in it keep their slots and are updated
+	 * 
+	 * @param objs
+	 */
+	public void sync(Collection<FCObj> objs){
+		boolean[] keep = new boolean[limit];
+		ArrayList<FCObj> added = new ArrayList<>();
+		for(FCObj obj:objs){
+			if(has(obj)){
+				keep[obj.id] = true;
+				update(obj);
+			}else{
+				added.add(obj);
+			}
+		}
+		for(int i=0;i<keep.length;i++){
+			FCObj obj = this.objs[i];
+			if(obj!=null&&!keep[i])remove(obj);
+		}
+		addAll(added);
+	}
+	
+	private void write(int slot,FCObj obj){
+		x[slot] = obj.x;
+		y[slot] = obj.y;
+		w[slot] = obj.w;
+		h[slot] = obj.h;
+		r[slot] = obj.r;
+		cos[slot] = obj.getCos();
+		sin[slot] = obj.getSin();
+		minx[slot] = obj.getMinX();
+		miny[slot] = obj.getMinY();
+		maxx[slot] = obj.getMaxX();
+		maxy[slot] = obj.getMaxY();
+		typeData[slot] = obj.typeData;
+		z[slot] = obj.z;
+		int jn = obj.joints.size();
+		if(jn>jointCapacity[slot]){
+			if(jointGarbage+jointCapacity[slot]>jointUsed>>1)compactJoints();
+			jointGarbage += jointCapacity[slot];
+			if(jointUsed+jn>jointData.length)jointData = Arrays.copyOf(jointData, Math.max(jointData.length*2, jointUsed+jn));
+			jointStart[slot] = jointUsed;
+			jointCapacity[slot] = jn;
+			jointUsed += jn;
+		}
+		obj.joints.copyTo(jointData, jointStart[slot]);
+		jointCount[slot] = jn;
+		version++;
+	}
+	
+	private static boolean isLevel(int typeData){
+		return !Bits.readBit(typeData, FCObj.TYPE_DESIGN);
+	}
+	
+	/**
+	 * Move all joints together, dropping space no slot owns
+	 */
+	private void compactJoints(){
+		int[] packed = new int[Math.max(INITIAL_CAPACITY, jointData.length)];
+		int used = 0;
+		for(int i=0;i<limit;i++){
+			if(objs[i]==null)continue;
+			int jn = jointCount[i];
+			System.arraycopy(jointData, jointStart[i], packed, used, jn);
+			jointStart[i] = used;
+			jointCapacity[i] = jn;
+			used += jn;
+		}
+		jointData = packed;
+		jointUsed = used;
+		jointGarbage = 0;
+	}
+	
+	/**
+	 * Get one joint of a slot
+	 * 
+	 * @param slot
+	 * @param index which joint, from 0 to <i>jointCount[slot]</i>
+	 * @return
+	 */
+	public int getJoint(int slot,int index){
+		return jointData[jointStart[slot]+index];
+	}
+	
+	/**
+	 * Is the point inside the shape in this slot? Same as
+	 * {@link FCObj#contains(double, double)}
+	 * 
+	 * @param slot
+	 * @param px
+	 * @param py
+	 * @return
+	 */
+	public boolean contains(int slot,double px,double py){
+		final double x = this.x[slot],
+				y = this.y[slot];
+		if(Bits.readBit(typeData[slot], FCObj.TYPE_CIRCLE)){
+			return Math.hypot(x-px, y-py)<=Math.abs(w[slot]*0.5);
+		}else{
+			final double rx = Math.abs(w[slot]*0.5),
+					ry = Math.abs(h[slot]*0.5),
+					cr = cos[slot],
+					sr = sin[slot];
+			px -= x;
+			py -= y;
+			// Invert rotation
+			final double nx = px*cr+py*sr;
+			py = py*cr-px*sr;
+			px = nx;
+			return -rx<=px&&px<=rx && -ry<=py&&py<=ry;
+		}
+	}
+	
+	public String toString(){
+		return "ObjectStore("+size+" objects, "+limit+" slots, "+(jointUsed-jointGarbage)+" joints)";
+	}
+	
+}
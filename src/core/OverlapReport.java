@@ -0,0 +1,327 @@
+package core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Finds every pair of objects in a store whose shapes overlap
+ * <br>
+ * Bounding boxes are sorted by their left side and swept once,
+ * so only pairs whose boxes overlap on the x axis are looked at,
+ * then those are checked with the exact tests in {@link Geometry}
+ * <br>
+ * Large stores are split into chunks of the sorted order which
+ * are swept in parallel on the common {@link ForkJoinPool}, the
+ * result is the same as sweeping them one at a time
+ * <br>
+ * Can also be run on its own, see {@link #main(String[])}
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class OverlapReport {
+	
+	/**
+	 * With fewer objects than this, don't bother going parallel
+	 */
+	public static final int PARALLEL_THRESHOLD = 4096;
+	/**
+	 * Most objects to sweep from in one task
+	 */
+	public static final int CHUNK_SIZE = 1024;
+	
+	/**
+	 * Decides which pairs are worth reporting, checked before
+	 * the exact test
+	 * 
+	 * @author EPICI
+	 * @version 1.0
+	 */
+	public static interface Filter {
+		
+		/**
+		 * Should this pair be reported if they overlap?
+		 * 
+		 * @param store
+		 * @param a slot
+		 * @param b slot
+		 * @return
+		 */
+		public boolean test(ObjectStore store,int a,int b);
+		
+	}
+	
+	/**
+	 * Every pair
+	 */
+	public static final Filter ALL = (ObjectStore store,int a,int b)->true;
+	/**
+	 * Level pieces which collide and are in a build area
+	 */
+	public static final Filter LEVEL_IN_BUILD_AREA = (ObjectStore store,int a,int b)->
+			isBuildArea(store.typeData[a])&&isSolidLevel(store.typeData[b])
+			||isBuildArea(store.typeData[b])&&isSolidLevel(store.typeData[a]);
+	/**
+	 * Design pieces which start inside level pieces that collide
+	 */
+	public static final Filter DESIGN_IN_LEVEL = (ObjectStore store,int a,int b)->
+			Bits.readBit(store.typeData[a], FCObj.TYPE_DESIGN)&&isSolidLevel(store.typeData[b])
+			||Bits.readBit(store.typeData[b], FCObj.TYPE_DESIGN)&&isSolidLevel(store.typeData[a]);
+	
+	private static boolean isBuildArea(int typeData){
+		return typeData!=0&&!Bits.readBit(typeData, FCObj.TYPE_DESIGN)
+				&&!Bits.readBit(typeData, FCObj.TYPE_COLLIDES)&&!Bits.readBit(typeData, FCObj.TYPE_GOAL);
+	}
+	
+	private static boolean isSolidLevel(int typeData){
+		return !Bits.readBit(typeData, FCObj.TYPE_DESIGN)&&Bits.readBit(typeData, FCObj.TYPE_COLLIDES);
+	}
+	
+	/**
+	 * Store the pairs are from
+	 */
+	public final ObjectStore store;
+	/**
+	 * Slots of each pair, one after the other
+	 */
+	private final IntList pairs;
+	
+	private OverlapReport(ObjectStore store,IntList pairs){
+		this.store = store;
+		this.pairs = pairs;
+	}
+	
+	/**
+	 * @return number of overlapping pairs
+	 */
+	public int size(){
+		return pairs.size()>>1;
+	}
+	
+	/**
+	 * Get the lower slot of a pair
+	 * 
+	 * @param index which pair
+	 * @return
+	 */
+	public int getFirst(int index){
+		return pairs.get(index<<1);
+	}
+	
+	/**
+	 * Get the higher slot of a pair
+	 * 
+	 * @param index which pair
+	 * @return
+	 */
+	public int getSecond(int index){
+		return pairs.get((index<<1)|1);
+	}
+	
+	public String toString(){
+		return "OverlapReport("+size()+" pairs)";
+	}
+	
+	/**
+	 * Sweeps from one chunk of the sorted order
+	 */
+	private static final class Sweep extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final ObjectStore store;
+		final Filter filter;
+		final int[] order;
+		final float[] keys;
+		final IntList[] results;
+		final int lo, hi;
+		
+		Sweep(ObjectStore store,Filter filter,int[] order,float[] keys,IntList[] results,int lo,int hi){
+			this.store = store;
+			this.filter = filter;
+			this.order = order;
+			this.keys = keys;
+			this.results = results;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		@Override
+		protected void compute(){
+			if(hi-lo<=1){
+				sweep(store, filter, order, keys, lo*CHUNK_SIZE, Math.min(order.length, hi*CHUNK_SIZE), results[lo] = new IntList());
+			}else{
+				int mid = (lo+hi)>>>1;
+				invokeAll(new Sweep(store, filter, order, keys, results, lo, mid),
+						new Sweep(store, filter, order, keys, results, mid, hi));
+			}
+		}
+		
+	}
+	
+	/**
+	 * Find every pair of objects in a store whose shapes overlap
+	 * <br>
+	 * Objects with bounds which aren't finite are left out
+	 * <br>
+	 * The store must not change until this returns
+	 * 
+	 * @param store
+	 * @param filter which pairs to report, null for all
+	 * @return
+	 */
+	public static OverlapReport find(ObjectStore store,Filter filter){
+		if(filter==null)filter = ALL;
+		final int[] order = sortByLeft(store);
+		final int n = order.length;
+		// Left sides, rounded down so they can be compared with right sides
+		final float[] keys = new float[n];
+		for(int i=0;i<n;i++){
+			keys[i] = floatDown(store.minx[order[i]]);
+		}
+		IntList pairs;
+		if(n<PARALLEL_THRESHOLD){
+			pairs = new IntList();
+			sweep(store, filter, order, keys, 0, n, pairs);
+		}else{
+			final int chunks = (n+CHUNK_SIZE-1)/CHUNK_SIZE;
+			IntList[] results = new IntList[chunks];
+			ForkJoinPool.commonPool().invoke(new Sweep(store, filter, order, keys, results, 0, chunks));
+			pairs = results[0];
+			for(int i=1;i<chunks;i++){
+				IntList result = results[i];
+				for(int j=0,m=result.size();j<m;j++){
+					pairs.add(result.get(j));
+				}
+			}
+		}
+		return new OverlapReport(store, pairs);
+	}
+	
+	/**
+	 * Test each object from <i>lo</i> to <i>hi</i> in the sorted
+	 * order against the objects after it, until their left side is
+	 * past its right side
+	 */
+	static void sweep(ObjectStore store,Filter filter,int[] order,float[] keys,int lo,int hi,IntList result){
+		final double[] minx = store.minx, miny = store.miny, maxx = store.maxx, maxy = store.maxy;
+		final int n = order.length;
+		for(int i=lo;i<hi;i++){
+			final int a = order[i];
+			final double right = maxx[a], top = miny[a], bottom = maxy[a];
+			// Keys are never more than the real left side, so once a key
+			// is past, every object from there on is too
+			for(int j=i+1;j<n&&keys[j]<=right;j++){
+				final int b = order[j];
+				if(maxy[b]<top||bottom<miny[b]||right<minx[b])continue;
+				if(!filter.test(store, a, b))continue;
+				if(Geometry.intersects(store, a, b)){
+					result.add(Math.min(a, b));
+					result.add(Math.max(a, b));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get the slots with finite bounds, sorted by the left side
+	 * of their bounding box
+	 */
+	private static int[] sortByLeft(ObjectStore store){
+		final FCObj[] objs = store.objs;
+		final double[] minx = store.minx, miny = store.miny, maxx = store.maxx, maxy = store.maxy;
+		long[] packed = new long[store.size];
+		int n = 0;
+		for(int i=0;i<store.limit;i++){
+			if(objs[i]==null)continue;
+			// Also false for NaN
+			if(!(Math.abs(minx[i])<Double.POSITIVE_INFINITY&&Math.abs(maxx[i])<Double.POSITIVE_INFINITY
+					&&Math.abs(miny[i])<Double.POSITIVE_INFINITY&&Math.abs(maxy[i])<Double.POSITIVE_INFINITY))continue;
+			// Key in the high half sorts as a signed int, slot in the low half
+			int bits = Float.floatToIntBits(floatDown(minx[i]));
+			bits ^= (bits>>31)&0x7fffffff;
+			packed[n++] = ((long)bits<<32)|i;
+		}
+		if(n<PARALLEL_THRESHOLD)Arrays.sort(packed, 0, n);
+		else Arrays.parallelSort(packed, 0, n);
+		int[] order = new int[n];
+		for(int i=0;i<n;i++){
+			order[i] = (int)packed[i];
+		}
+		return order;
+	}
+	
+	/**
+	 * Round to a float which is not more than the value
+	 */
+	private static float floatDown(double value){
+		float result = (float)value;
+		return result>value?Math.nextDown(result):result;
+	}
+	
+	/**
+	 * Print the overlapping pairs in FCML files, or standard input if
+	 * none are given, without opening the editor
+	 * <br>
+	 * Options: <i>-b</i> to only report collidable level pieces in build
+	 * areas, <i>-d</i> to only report design pieces in collidable level pieces
+	 * 
+	 * @param args options and files
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException{
+		Filter filter = ALL;
+		ArrayList<String> files = new ArrayList<>();
+		for(String arg:args){
+			switch(arg){
+			case "-b":{
+				filter = LEVEL_IN_BUILD_AREA;
+				break;
+			}
+			case "-d":{
+				filter = DESIGN_IN_LEVEL;
+				break;
+			}
+			default:{
+				files.add(arg);
+			}
+			}
+		}
+		PrintStream out = System.out;
+		if(files.isEmpty()){
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for(int read;(read=System.in.read(buffer))>=0;){
+				bytes.write(buffer, 0, read);
+			}
+			report(new String(bytes.toByteArray(), StandardCharsets.UTF_8), filter, out);
+		}else{
+			for(String file:files){
+				if(files.size()>1)out.println(file+":");
+				report(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8), filter, out);
+			}
+		}
+	}
+	
+	private static void report(String text,Filter filter,PrintStream out){
+		FCObj[] parsed = BulkParser.parseLines(text, null);
+		ObjectStore store = new ObjectStore();
+		int[] lineOf = new int[parsed.length];
+		for(int i=0;i<parsed.length;i++){
+			FCObj obj = parsed[i];
+			if(obj==null)continue;
+			lineOf[store.add(obj)] = i;
+		}
+		OverlapReport report = find(store, filter);
+		for(int i=0,n=report.size();i<n;i++){
+			int a = report.getFirst(i), b = report.getSecond(i);
+			out.println("Line "+(lineOf[a]+1)+" and line "+(lineOf[b]+1)+" overlap: "
+					+store.get(a).toString("fcml")+" | "+store.get(b).toString("fcml"));
+		}
+		out.println(report.size()+" overlapping pairs");
+	}
+	
+}
@@ -0,0 +1,323 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Bounded cache from line text to the parsed object, which forgets
+ * roughly the least recently used lines first
+ * <br>
+ * Cached objects are shared and must never be changed, use
+ * <i>parse</i> to get a copy which is safe to put in the model
+ * <br>
+ * Lines which aren't objects are cached too, so they don't
+ * get parsed again either
+ * <br>
+ * Safe to use from multiple threads, lines are spread over
+ * separately locked stripes so parallel parsers rarely wait on
+ * each other, and parsing happens outside any lock with the
+ * caller's own parser
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public class ParseCache {
+	
+	/**
+	 * Default number of lines to remember
+	 */
+	public static final int DEFAULT_CAPACITY = 1<<15;
+	/**
+	 * Most lines <i>ensureCapacity</i> will grow to
+	 */
+	public static final int MAX_CAPACITY = 1<<18;
+	/**
+	 * Marker for lines which aren't objects
+	 */
+	public static final FCObj INVALID = new FCObj();
+	
+	/**
+	 * Log 2 of the number of stripes
+	 */
+	private static final int STRIPE_BITS = 6;
+	
+	/**
+	 * Most lines to remember, can grow through <i>ensureCapacity</i>
+	 */
+	public volatile int capacity;
+	
+	private final Stripe[] stripes = new Stripe[1<<STRIPE_BITS];
+	
+	public ParseCache(){
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * @param capacity most lines to remember
+	 */
+	public ParseCache(int capacity){
+		this.capacity = capacity;
+		for(int i=0;i<stripes.length;i++){
+			stripes[i] = new Stripe();
+		}
+	}
+	
+	/**
+	 * Make sure a pass over this many lines won't push
+	 * its own lines out, up to <i>MAX_CAPACITY</i>
+	 * 
+	 * @param lines number of lines about to be parsed
+	 */
+	public synchronized void ensureCapacity(int lines){
+		// Lines don't spread perfectly evenly over the stripes
+		int wanted = Math.min(MAX_CAPACITY, lines+(lines>>2));
+		if(wanted>capacity)capacity = wanted;
+	}
+	
+	/**
+	 * Get the shared parsed object for a line, parsing it if needed
+	 * 
+	 * @param line the line
+	 * @param parser parser to use if it isn't cached
+	 * @return the shared object, which must not be changed, or null if
+	 * the line isn't an object
+	 */
+	public FCObj lookup(String line,FCMLParser parser){
+		return lookup(line, 0, line.length(), parser);
+	}
+	
+	/**
+	 * Get the shared parsed object for part of some text as a line,
+	 * parsing it if needed
+	 * <br>
+	 * Only allocates when the line isn't cached
+	 * 
+	 * @param text
+	 * @param start where the line starts, inclusive
+	 * @param end where the line ends, exclusive
+	 * @param parser parser to use if it isn't cached
+	 * @return the shared object, which must not be changed, or null if
+	 * the line isn't an object
+	 */
+	public FCObj lookup(CharSequence text,int start,int end,FCMLParser parser){
+		final int hash = hash(text, start, end);
+		final Stripe stripe = stripes[(hash*0x9E3779B9)>>>(32-STRIPE_BITS)];
+		FCObj obj = stripe.get(hash, text, start, end);
+		if(obj==null){
+			obj = parser.parse(text, start, end);
+			if(obj==null)obj = INVALID;
+			stripe.put(hash, text.subSequence(start, end).toString(), obj);
+		}
+		return obj==INVALID?null:obj;
+	}
+	
+	/**
+	 * Parse part of some text as a line, using the cache
+	 * 
+	 * @param text
+	 * @param start where the line starts, inclusive
+	 * @param end where the line ends, exclusive
+	 * @param parser parser to use if it isn't cached
+	 * @return a new copy of the object, or null if it isn't one
+	 */
+	public FCObj parse(CharSequence text,int start,int end,FCMLParser parser){
+		FCObj obj = lookup(text, start, end, parser);
+		return obj==null?null:new FCObj(obj);
+	}
+	
+	/**
+	 * Forget everything, the counters are kept
+	 */
+	public void clear(){
+		for(Stripe stripe:stripes){
+			stripe.clear();
+		}
+	}
+	
+	/**
+	 * @return number of lines remembered
+	 */
+	public int size(){
+		int size = 0;
+		for(Stripe stripe:stripes){
+			synchronized(stripe){
+				size += stripe.size;
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * @return number of lookups which were found in the cache
+	 */
+	public long hits(){
+		long hits = 0;
+		for(Stripe stripe:stripes){
+			synchronized(stripe){
+				hits += stripe.hits;
+			}
+		}
+		return hits;
+	}
+	
+	/**
+	 * @return number of lookups which had to be parsed
+	 */
+	public long misses(){
+		long misses = 0;
+		for(Stripe stripe:stripes){
+			synchronized(stripe){
+				misses += stripe.misses;
+			}
+		}
+		return misses;
+	}
+	
+	/**
+	 * @return fraction of lookups found in the cache, 0 if there were none
+	 */
+	public double hitRate(){
+		long hits = hits(), total = hits+misses();
+		return total==0?0:(double)hits/total;
+	}
+	
+	public String toString(){
+		return "ParseCache("+size()+"/"+capacity+", "+hits()+" hits, "+misses()+" misses)";
+	}
+	
+	/**
+	 * Same as {@link String#hashCode()} of the line, with the high
+	 * bits mixed into the low ones
+	 */
+	private static int hash(CharSequence text,int start,int end){
+		int h = 0;
+		for(int i=start;i<end;i++){
+			h = 31*h+text.charAt(i);
+		}
+		return h^(h>>>16);
+	}
+	
+	private static boolean matches(String key,CharSequence text,int start,int end){
+		if(key.length()!=end-start)return false;
+		for(int i=start,j=0;i<end;i++,j++){
+			if(key.charAt(j)!=text.charAt(i))return false;
+		}
+		return true;
+	}
+	
+	private static final class Entry {
+		
+		final int hash;
+		final String key;
+		final FCObj value;
+		/**
+		 * Next entry in the same bucket
+		 */
+		Entry next;
+		/**
+		 * Looked up since the clock hand last passed?
+		 */
+		boolean used;
+		
+		Entry(int hash,String key,FCObj value){
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+		
+	}
+	
+	/**
+	 * One lock's share of the lines, a chained hash table
+	 * <br>
+	 * Lookups only mark an entry as used instead of moving it,
+	 * when full a clock hand sweeps over the entries and replaces
+	 * the first one not used since it last passed
+	 */
+	private final class Stripe {
+		
+		Entry[] table = new Entry[16];
+		/**
+		 * Entries in the order the clock hand visits them
+		 */
+		Entry[] ring = new Entry[16];
+		int size;
+		int hand;
+		long hits;
+		long misses;
+		
+		synchronized FCObj get(int hash,CharSequence text,int start,int end){
+			for(Entry e=table[hash&(table.length-1)];e!=null;e=e.next){
+				if(e.hash==hash&&matches(e.key, text, start, end)){
+					e.used = true;
+					hits++;
+					return e.value;
+				}
+			}
+			misses++;
+			return null;
+		}
+		
+		synchronized void put(int hash,String key,FCObj value){
+			// Another thread may have parsed the same line meanwhile
+			for(Entry e=table[hash&(table.length-1)];e!=null;e=e.next){
+				if(e.hash==hash&&e.key.equals(key))return;
+			}
+			Entry entry = new Entry(hash, key, value);
+			int limit = Math.max(1, capacity>>STRIPE_BITS);
+			if(size<limit){
+				if(size==ring.length)ring = Arrays.copyOf(ring, size*2);
+				ring[size++] = entry;
+				link(entry);
+				if(size>table.length-(table.length>>2))rehash();
+			}else{
+				Entry victim;
+				while(true){
+					if(hand>=size)hand = 0;
+					victim = ring[hand];
+					if(!victim.used)break;
+					victim.used = false;
+					hand++;
+				}
+				unlink(victim);
+				ring[hand++] = entry;
+				link(entry);
+			}
+		}
+		
+		synchronized void clear(){
+			Arrays.fill(table, null);
+			Arrays.fill(ring, 0, size, null);
+			size = 0;
+			hand = 0;
+		}
+		
+		private void link(Entry entry){
+			int index = entry.hash&(table.length-1);
+			entry.next = table[index];
+			table[index] = entry;
+		}
+		
+		private void unlink(Entry entry){
+			int index = entry.hash&(table.length-1);
+			if(table[index]==entry){
+				table[index] = entry.next;
+				return;
+			}
+			for(Entry e=table[index];e!=null;e=e.next){
+				if(e.next==entry){
+					e.next = entry.next;
+					return;
+				}
+			}
+		}
+		
+		private void rehash(){
+			table = new Entry[table.length*2];
+			for(int i=0;i<size;i++){
+				link(ring[i]);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,179 @@
+package core;
+
+import java.util.*;
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+
+/**
+ * Offscreen image where every object is drawn in a colour made from
+ * its store slot, with the same view, sizes and level of detail as
+ * the editor, so the object at a pixel is the one drawn on top there
+ * <br>
+ * Only drawn again when the store or the view changes, after that
+ * finding the object under the mouse is one array read
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class PickBuffer {
+	
+	private BufferedImage image;
+	private int[] pixels;
+	private int width, height;
+	
+	// What the image was drawn with
+	private ObjectStore store;
+	private long version;
+	private double anchorx, anchory, scale;
+	private boolean showWireframe;
+	private double detailThreshold;
+	private boolean valid;
+	
+	// Reused while drawing
+	private final AffineTransform objTransform = new AffineTransform();
+	private final Ellipse2D.Double ellipse = new Ellipse2D.Double();
+	private final Rectangle2D.Double rect = new Rectangle2D.Double();
+	private final RoundRectangle2D.Double roundRect = new RoundRectangle2D.Double();
+	private final double[] size = new double[4];
+	private final int[] block = new int[4];
+	
+	/**
+	 * Draw the objects again if anything changed since last time
+	 * 
+	 * @param objs objects in the order they are painted, only ones in the store are drawn
+	 * @param store
+	 * @param anchorx world x at the center
+	 * @param anchory world y at the center
+	 * @param scale world to pixel scale
+	 * @param width in pixels
+	 * @param height in pixels
+	 * @param showWireframe are objects drawn as wireframes?
+	 * @param detailThreshold see {@link GraphicEditorPane#detailThreshold}
+	 */
+	public void update(java.util.List<FCObj> objs,ObjectStore store,double anchorx,double anchory,double scale,int width,int height,
+			boolean showWireframe,double detailThreshold){
+		if(valid&&store==this.store&&store.version==version&&anchorx==this.anchorx&&anchory==this.anchory
+				&&scale==this.scale&&width==this.width&&height==this.height
+				&&showWireframe==this.showWireframe&&detailThreshold==this.detailThreshold)return;
+		this.store = store;
+		version = store.version;
+		this.anchorx = anchorx;
+		this.anchory = anchory;
+		this.scale = scale;
+		this.showWireframe = showWireframe;
+		this.detailThreshold = detailThreshold;
+		valid = true;
+		if(image==null||width!=this.width||height!=this.height){
+			this.width = width;
+			this.height = height;
+			image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		}else{
+			Arrays.fill(pixels, 0);
+		}
+		Graphics2D g = image.createGraphics();
+		// Colours must stay exact
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+		g.translate(width*0.5, height*0.5);
+		g.scale(scale, scale);
+		g.translate(-anchorx, -anchory);
+		// Same layers as the editor: each level z value, then all design pieces,
+		// within a layer every fill is on top of every outline
+		final int n = objs.size();
+		for(int i=0;i<n;){
+			int z = objs.get(i).z;
+			int end = i;
+			while(end<n&&objs.get(end).z==z)end++;
+			drawLayer(g, objs, i, end, false);
+			i = end;
+		}
+		drawLayer(g, objs, 0, n, true);
+		g.dispose();
+	}
+	
+	/**
+	 * Draw the objects in a range which are or aren't design pieces,
+	 * outlines first then fills, the same way the editor does
+	 */
+	private void drawLayer(Graphics2D g,java.util.List<FCObj> objs,int lo,int hi,boolean design){
+		final AffineTransform ot = g.getTransform();
+		final double minDetail = detailThreshold/scale;
+		final boolean rounded = GraphicEditorPane.ROUND_RADIUS>=minDetail;
+		final double[] size = this.size;
+		// Wireframes have no fills
+		final int passes = showWireframe?1:2;
+		for(int pass=0;pass<passes;pass++){
+			for(int i=lo;i<hi;i++){
+				FCObj obj = objs.get(i);
+				int typeData = obj.getTypeData();
+				// Empty objects are not drawn
+				if(typeData==0||Bits.readBit(typeData, FCObj.TYPE_DESIGN)!=design||!store.has(obj))continue;
+				final double cr = obj.getCos(), sr = obj.getSin();
+				// Slot 0 is colour 1, so black means nothing
+				g.setColor(new Color(obj.id+1));
+				if(GraphicEditorPane.isTiny(obj, scale, detailThreshold)){
+					// Only a block of pixels, drawn with the outlines
+					if(pass==0){
+						GraphicEditorPane.getTinyBlock(obj, cr, sr, ot, block);
+						g.setTransform(new AffineTransform());
+						g.fillRect(block[0], block[1], block[2], block[3]);
+						g.setTransform(ot);
+					}
+					continue;
+				}
+				final boolean nudge = GraphicEditorPane.getDrawSize(typeData, obj.w, obj.h, showWireframe, size);
+				final double ow = size[0], oh = size[1], iw = size[2], ih = size[3];
+				// Inner fills too small to see are left out
+				if(pass==1&&!(Math.min(iw, ih)>=minDetail))continue;
+				boolean iscircle = Bits.readBit(typeData, FCObj.TYPE_CIRCLE);
+				double sw = pass==0?ow:iw, sh = pass==0?oh:ih;
+				objTransform.setTransform(cr, sr, -sr, cr, obj.x, obj.y);
+				g.transform(objTransform);
+				Shape shape;
+				if(iscircle){
+					ellipse.setFrame(sw*-0.5, sh*-0.5, sw, sh);
+					shape = ellipse;
+				}else{
+					if(nudge&&pass==0)g.translate(0.5, 0.5);
+					if(pass==0&&rounded&&!showWireframe){
+						roundRect.setRoundRect(sw*-0.5, sh*-0.5, sw, sh, Math.PI/2, GraphicEditorPane.ROUND_RADIUS);
+						shape = roundRect;
+					}else{
+						rect.setRect(sw*-0.5, sh*-0.5, sw, sh);
+						shape = rect;
+					}
+				}
+				if(showWireframe){
+					g.draw(shape);
+				}else{
+					g.fill(shape);
+				}
+				g.setTransform(ot);
+			}
+		}
+	}
+	
+	/**
+	 * Find which object is drawn at a pixel, must have been
+	 * drawn with <i>update</i> first
+	 * 
+	 * @param x in pixels
+	 * @param y in pixels
+	 * @return the slot, or -1 if there is nothing there
+	 */
+	public int pick(int x,int y){
+		if(!valid||x<0||y<0||x>=width||y>=height)return -1;
+		int slot = (pixels[y*width+x]&0xffffff)-1;
+		return slot>=0&&slot<store.limit&&store.objs[slot]!=null?slot:-1;
+	}
+	
+	/**
+	 * Forget what was drawn, so the next <i>update</i> draws again
+	 */
+	public void invalidate(){
+		valid = false;
+	}
+	
+}
@@ -2,10 +2,13 @@ package core;
 
 import java.util.*;
 import java.awt.*;
+import java.awt.geom.*;
 import java.awt.image.*;
 
 public class RenderLayer {
 	
+	private static final AffineTransform IDENTITY = new AffineTransform();
+	
 	public final int n,w,h;
 	public final BufferedImage[] images;
 	public final Graphics2D[] graphics;
@@ -23,12 +26,80 @@ public class RenderLayer {
 		}
 	}
 	
+	private RenderLayer(BufferedImage[] images){
+		n=images.length;
+		w=images[0].getWidth();
+		h=images[0].getHeight();
+		this.images = images;
+		graphics = new Graphics2D[n];
+		for(int i=0;i<n;i++){
+			Graphics2D g = graphics[i] = images[i].createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		}
+	}
+	
+	/**
+	 * Get a layer with this many images of this size, reusing
+	 * the given one if it fits
+	 * 
+	 * @param layer layer to reuse, can be null
+	 * @param n
+	 * @param w
+	 * @param h
+	 * @return
+	 */
+	public static RenderLayer reuse(RenderLayer layer,int n,int w,int h){
+		if(layer!=null&&layer.n==n&&layer.w==w&&layer.h==h)return layer;
+		return new RenderLayer(n,w,h);
+	}
+	
+	/**
+	 * Get a layer which shares this one's images but only ever
+	 * draws inside a rectangle of them
+	 * <br>
+	 * Different regions can be drawn on from different threads
+	 * at the same time, as long as they don't overlap
+	 * 
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @return
+	 */
+	public RenderLayer region(int x,int y,int w,int h){
+		RenderLayer region = new RenderLayer(images);
+		for(int i=0;i<n;i++){
+			region.graphics[i].clipRect(x, y, w, h);
+		}
+		return region;
+	}
+	
+	/**
+	 * Make every image transparent again and undo all transforms,
+	 * so the layer can be drawn on as if it was new
+	 */
+	public void clear(){
+		for(int i=0;i<n;i++){
+			Graphics2D g = graphics[i];
+			g.setTransform(IDENTITY);
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, w, h);
+			g.setComposite(AlphaComposite.SrcOver);
+		}
+	}
+	
 	public void renderTo(Graphics2D g){
 		for(BufferedImage img:images){
 			g.drawImage(img, 0, 0, null);
 		}
 	}
 	
+	public void transform(AffineTransform transform){
+		for(int i=0;i<n;i++){
+			graphics[i].transform(transform);
+		}
+	}
+	
 	public void translate(double x,double y){
 		for(int i=0;i<n;i++){
 			graphics[i].translate(x, y);
@@ -46,5 +117,14 @@ public class RenderLayer {
 			graphics[i].scale(x, y);
 		}
 	}
+	
+	/**
+	 * Release the graphics, the layer can't be drawn on after
+	 */
+	public void dispose(){
+		for(int i=0;i<n;i++){
+			graphics[i].dispose();
+		}
+	}
 
 }
@@ -0,0 +1,275 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Set of selected objects which remembers the order they were
+ * selected in, the first one is treated specially
+ * <br>
+ * Membership is found by object <i>id</i> and checked by identity,
+ * so add, remove and contains take constant time no matter how
+ * much is selected, objects should keep their id while selected
+ * <br>
+ * The selection can be backed up and restored, which is used for
+ * previews, it is stored as the backup plus what was added and
+ * removed since, so restoring only costs as much as what changed
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public class Selection extends AbstractCollection<FCObj> {
+	
+	/**
+	 * Objects in order, with holes where some were removed,
+	 * and the position of each by id
+	 */
+	private static final class Layer {
+		
+		FCObj[] items = new FCObj[16];
+		/**
+		 * Position plus 1 by id, 0 if not here
+		 */
+		int[] positions = new int[16];
+		/**
+		 * Length of the used part of <i>items</i>, including holes
+		 */
+		int end;
+		/**
+		 * Number of objects
+		 */
+		int count;
+		
+		int indexOf(FCObj obj){
+			int id = obj.id;
+			if(id<0){
+				for(int i=0;i<end;i++){
+					if(items[i]==obj)return i;
+				}
+				return -1;
+			}
+			if(id>=positions.length)return -1;
+			int i = positions[id]-1;
+			return i>=0&&items[i]==obj?i:-1;
+		}
+		
+		boolean contains(FCObj obj){
+			return indexOf(obj)>=0;
+		}
+		
+		/**
+		 * Add to the end, must not be here already
+		 */
+		void add(FCObj obj){
+			if(end==items.length){
+				if(end-count>count)compact();
+				else items = Arrays.copyOf(items, end*2);
+			}
+			int id = obj.id;
+			if(id>=0){
+				if(id>=positions.length)positions = Arrays.copyOf(positions, Math.max(id+1, positions.length*2));
+				positions[id] = end+1;
+			}
+			items[end++] = obj;
+			count++;
+		}
+		
+		boolean remove(FCObj obj){
+			int i = indexOf(obj);
+			if(i<0)return false;
+			items[i] = null;
+			int id = obj.id;
+			if(id>=0)positions[id] = 0;
+			if(--count==0)end = 0;
+			return true;
+		}
+		
+		void clear(){
+			for(int i=0;i<end;i++){
+				FCObj obj = items[i];
+				if(obj!=null){
+					int id = obj.id;
+					if(id>=0&&id<positions.length&&positions[id]==i+1)positions[id] = 0;
+					items[i] = null;
+				}
+			}
+			end = count = 0;
+		}
+		
+		/**
+		 * Close the holes, keeping the order
+		 */
+		void compact(){
+			int j = 0;
+			for(int i=0;i<end;i++){
+				FCObj obj = items[i];
+				if(obj!=null){
+					items[i] = null;
+					items[j] = obj;
+					int id = obj.id;
+					if(id>=0)positions[id] = j+1;
+					j++;
+				}
+			}
+			end = j;
+		}
+		
+	}
+	
+	private Layer base = new Layer();
+	private Layer added = new Layer();
+	private Layer removed = new Layer();
+	/**
+	 * If true, nothing in <i>base</i> is selected
+	 */
+	private boolean baseCleared;
+	
+	@Override
+	public int size(){
+		return added.count+(baseCleared?0:base.count-removed.count);
+	}
+	
+	@Override
+	public boolean contains(Object o){
+		if(!(o instanceof FCObj))return false;
+		FCObj obj = (FCObj) o;
+		return added.contains(obj)||inBase(obj);
+	}
+	
+	private boolean inBase(FCObj obj){
+		return !baseCleared&&base.contains(obj)&&!removed.contains(obj);
+	}
+	
+	/**
+	 * Add an object to the end, if it isn't already selected
+	 */
+	@Override
+	public boolean add(FCObj obj){
+		if(contains(obj))return false;
+		// Even if it was in base and removed, it goes to the end now
+		added.add(obj);
+		return true;
+	}
+	
+	@Override
+	public boolean remove(Object o){
+		if(!(o instanceof FCObj))return false;
+		FCObj obj = (FCObj) o;
+		if(added.remove(obj))return true;
+		if(inBase(obj)){
+			removed.add(obj);
+			return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public void clear(){
+		added.clear();
+		removed.clear();
+		baseCleared = true;
+	}
+	
+	/**
+	 * Get the first selected object
+	 * 
+	 * @return the object, or null if nothing is selected
+	 */
+	public FCObj first(){
+		Iterator<FCObj> iter = iterator();
+		return iter.hasNext()?iter.next():null;
+	}
+	
+	/**
+	 * Get a selected object by its position in the order,
+	 * takes time proportional to the index
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public FCObj get(int index){
+		if(index<0||index>=size())throw new IndexOutOfBoundsException("Index "+index+" out of bounds for length "+size());
+		Iterator<FCObj> iter = iterator();
+		for(int i=0;i<index;i++){
+			iter.next();
+		}
+		return iter.next();
+	}
+	
+	/**
+	 * Remember the current selection, to go back to with <i>restore</i>
+	 */
+	public void backup(){
+		if(baseCleared){
+			Layer swap = base;
+			base = added;
+			added = swap;
+			added.clear();
+		}else{
+			for(int i=0;i<removed.end;i++){
+				FCObj obj = removed.items[i];
+				if(obj!=null)base.remove(obj);
+			}
+			for(int i=0;i<added.end;i++){
+				FCObj obj = added.items[i];
+				if(obj!=null)base.add(obj);
+			}
+			added.clear();
+			if(base.end-base.count>base.count)base.compact();
+		}
+		removed.clear();
+		baseCleared = false;
+	}
+	
+	/**
+	 * Go back to the selection when <i>backup</i> was last called
+	 */
+	public void restore(){
+		added.clear();
+		removed.clear();
+		baseCleared = false;
+	}
+	
+	@Override
+	public Iterator<FCObj> iterator(){
+		return new Iterator<FCObj>(){
+			
+			/**
+			 * Which layer, 0 for base and 1 for added
+			 */
+			int layer = baseCleared?1:0;
+			int i = -1;
+			FCObj next = advance();
+			
+			private FCObj advance(){
+				while(layer==0){
+					while(++i<base.end){
+						FCObj obj = base.items[i];
+						if(obj!=null&&!removed.contains(obj))return obj;
+					}
+					layer = 1;
+					i = -1;
+				}
+				while(++i<added.end){
+					FCObj obj = added.items[i];
+					if(obj!=null)return obj;
+				}
+				return null;
+			}
+			
+			@Override
+			public boolean hasNext(){
+				return next!=null;
+			}
+			
+			@Override
+			public FCObj next(){
+				if(next==null)throw new NoSuchElementException();
+				FCObj result = next;
+				next = advance();
+				return result;
+			}
+			
+		};
+	}
+	
+}
@@ -0,0 +1,204 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Uniform grid over the bounding boxes of the objects in an
+ * {@link ObjectStore}, used to find which objects could be at a point
+ * <br>
+ * Each object is put in every cell its bounding box touches, cells
+ * are kept in a hash table so the world doesn't need bounds
+ * <br>
+ * Objects which would touch too many cells, or cells too far from
+ * the origin, are kept in a separate list instead, which every
+ * query includes
+ * <br>
+ * Kept up to date as a listener of the store
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public final class SpatialGrid implements ObjectStore.Listener {
+	
+	/**
+	 * Default width and height of a cell, in world units
+	 */
+	public static final double DEFAULT_CELL_SIZE = 64;
+	/**
+	 * Most cells an object can be in before it goes in the big list instead
+	 */
+	public static final int MAX_CELLS = 64;
+	/**
+	 * Furthest cell from the origin on each axis, so cell
+	 * coordinates and loops over them can't overflow
+	 */
+	public static final int MAX_CELL = 1<<30;
+	
+	// Where each slot is
+	private static final byte NONE = 0, CELLS = 1, BIG = 2;
+	
+	/**
+	 * Width and height of a cell, in world units
+	 */
+	public final double cellSize;
+	private final double invCellSize;
+	
+	// Slots in each cell, by cell coordinates
+	private final CellTable cells = new CellTable();
+	
+	// Objects which are too big
+	private int[] big = new int[16];
+	private int bigCount;
+	
+	// Per slot
+	private byte[] state = new byte[0];
+	private int[] cx0 = new int[0], cy0 = new int[0], cx1 = new int[0], cy1 = new int[0];
+	
+	public SpatialGrid(){
+		this(DEFAULT_CELL_SIZE);
+	}
+	
+	/**
+	 * @param cellSize width and height of a cell, in world units
+	 */
+	public SpatialGrid(double cellSize){
+		this.cellSize = cellSize;
+		invCellSize = 1/cellSize;
+	}
+	
+	/**
+	 * Cell coordinate on one axis, still as a double since
+	 * it might not fit in an int
+	 */
+	private double cellOf(double v){
+		return Math.floor(v*invCellSize);
+	}
+	
+	/**
+	 * Is a cell coordinate within <i>MAX_CELL</i>? Also false for NaN
+	 */
+	private static boolean inGrid(double c){
+		return c>=-MAX_CELL&&c<=MAX_CELL;
+	}
+	
+	private void ensureSlots(int n){
+		if(state.length<n){
+			int length = Math.max(n, state.length*2);
+			state = Arrays.copyOf(state, length);
+			cx0 = Arrays.copyOf(cx0, length);
+			cy0 = Arrays.copyOf(cy0, length);
+			cx1 = Arrays.copyOf(cx1, length);
+			cy1 = Arrays.copyOf(cy1, length);
+		}
+	}
+	
+	private void insert(ObjectStore store,int slot){
+		ensureSlots(slot+1);
+		final double minx = store.minx[slot], miny = store.miny[slot],
+				maxx = store.maxx[slot], maxy = store.maxy[slot];
+		final double fx0 = cellOf(minx), fy0 = cellOf(miny), fx1 = cellOf(maxx), fy1 = cellOf(maxy);
+		// Negated so NaN goes in the big list too
+		if(!(inGrid(fx0)&&inGrid(fy0)&&inGrid(fx1)&&inGrid(fy1)
+				&&fx0<=fx1&&fy0<=fy1&&(fx1-fx0+1)*(fy1-fy0+1)<=MAX_CELLS)){
+			insertBig(slot);
+			return;
+		}
+		final int x0 = (int)fx0, y0 = (int)fy0, x1 = (int)fx1, y1 = (int)fy1;
+		state[slot] = CELLS;
+		cx0[slot] = x0;
+		cy0[slot] = y0;
+		cx1[slot] = x1;
+		cy1[slot] = y1;
+		for(int cx=x0;cx<=x1;cx++){
+			for(int cy=y0;cy<=y1;cy++){
+				cells.add(cx, cy, slot);
+			}
+		}
+	}
+	
+	private void insertBig(int slot){
+		state[slot] = BIG;
+		if(bigCount==big.length)big = Arrays.copyOf(big, bigCount*2);
+		big[bigCount++] = slot;
+	}
+	
+	private void delete(int slot){
+		if(slot>=state.length)return;
+		switch(state[slot]){
+		case CELLS:{
+			for(int cx=cx0[slot],x1=cx1[slot];cx<=x1;cx++){
+				for(int cy=cy0[slot],y1=cy1[slot];cy<=y1;cy++){
+					cells.remove(cx, cy, slot);
+				}
+			}
+			break;
+		}
+		case BIG:{
+			for(int j=0;j<bigCount;j++){
+				if(big[j]==slot){
+					big[j] = big[--bigCount];
+					break;
+				}
+			}
+			break;
+		}
+		}
+		state[slot] = NONE;
+	}
+	
+	@Override
+	public void added(ObjectStore store,int slot){
+		insert(store, slot);
+	}
+	
+	@Override
+	public void removed(ObjectStore store,int slot){
+		delete(slot);
+	}
+	
+	@Override
+	public void changed(ObjectStore store,int slot){
+		// Usually it stays in the same cells
+		if(slot<state.length&&state[slot]==CELLS){
+			if(cellOf(store.minx[slot])==cx0[slot]&&cellOf(store.miny[slot])==cy0[slot]
+					&&cellOf(store.maxx[slot])==cx1[slot]&&cellOf(store.maxy[slot])==cy1[slot])return;
+		}
+		delete(slot);
+		insert(store, slot);
+	}
+	
+	@Override
+	public void cleared(ObjectStore store){
+		cells.clear();
+		bigCount = 0;
+		Arrays.fill(state, NONE);
+	}
+	
+	/**
+	 * Find the objects whose bounding boxes could contain a point,
+	 * some of them might not
+	 * 
+	 * @param px
+	 * @param py
+	 * @param result slots are added to this, each only once
+	 */
+	public void queryPoint(double px,double py,IntList result){
+		for(int j=0;j<bigCount;j++){
+			result.add(big[j]);
+		}
+		final double cx = cellOf(px), cy = cellOf(py);
+		// Nothing but the big list reaches outside the grid
+		if(!(inGrid(cx)&&inGrid(cy)))return;
+		final int i = cells.find((int)cx, (int)cy);
+		if(i<0)return;
+		final int[] slots = cells.values(i);
+		for(int j=0,n=cells.count(i);j<n;j++){
+			result.add(slots[j]);
+		}
+	}
+	
+	public String toString(){
+		return "SpatialGrid("+cells.size()+" cells, "+bigCount+" big)";
+	}
+	
+}
@@ -0,0 +1,370 @@
+package core;
+
+import java.util.*;
+import javax.swing.event.*;
+import javax.swing.text.*;
+
+/**
+ * Keeps track of which object each line of the text document
+ * parses to, so after an edit only the lines which changed
+ * get parsed again
+ * <br>
+ * Edits are followed as they happen by splicing the lines, the
+ * lines they touched are kept as one dirty range until parsed
+ * <br>
+ * Objects on lines which weren't touched keep their identity
+ * 
+ * @author EPICI
+ * @version 1.0
+ */
+public class TextSync {
+	
+	/**
+	 * The text document being tracked
+	 */
+	public final Document doc;
+	/**
+	 * Object for each line, null if the line is not an object
+	 * or is dirty
+	 * <br>
+	 * Same length as the line count of the document
+	 */
+	public final ArrayList<FCObj> lines = new ArrayList<>();
+	/**
+	 * First and last dirty line, inclusive, the first is -1 if
+	 * there are none
+	 */
+	public int dirtyFirst = -1, dirtyLast = -1;
+	/**
+	 * Cache used when parsing lines, can be null
+	 */
+	public ParseCache cache;
+	
+	/**
+	 * Objects which were on the dirty lines before they changed, in order
+	 */
+	private final ArrayList<FCObj> dirtyOld = new ArrayList<>();
+	private final Segment segment = new Segment();
+	/**
+	 * Line of each object by its id, can be out of date, so
+	 * always check the line really has that object
+	 */
+	private int[] lineById = new int[0];
+	
+	public TextSync(Document doc){
+		this.doc = doc;
+		markAll();
+	}
+	
+	/**
+	 * Throw away everything and parse the whole document again
+	 * 
+	 * @param target list to put all the parsed objects in, in line order
+	 */
+	public void reparseAll(ArrayList<FCObj> target){
+		lines.clear();
+		Element root = doc.getDefaultRootElement();
+		FCObj[] parsed = parseElements(root, 0, root.getElementCount()-1);
+		lines.ensureCapacity(parsed.length);
+		for(FCObj obj:parsed){
+			lines.add(obj);
+			if(obj!=null)target.add(obj);
+		}
+		clearDirty();
+	}
+	
+	/**
+	 * @return true if some lines need to be parsed again
+	 */
+	public boolean isDirty(){
+		return dirtyFirst>=0;
+	}
+	
+	/**
+	 * Are the lines in a range all up to date?
+	 * 
+	 * @param first first line, inclusive
+	 * @param last last line, inclusive
+	 * @return
+	 */
+	public boolean isClean(int first,int last){
+		return dirtyFirst<0||last<dirtyFirst||dirtyLast<first;
+	}
+	
+	/**
+	 * Follow a change to the document, the lines it touched
+	 * are made dirty and the rest keep their objects
+	 * <br>
+	 * If the change can't be matched up with the lines,
+	 * everything is made dirty instead
+	 * 
+	 * @param e the change, which has already happened to the document
+	 */
+	public void update(DocumentEvent e){
+		if(e.getType()==DocumentEvent.EventType.CHANGE){
+			markAll();
+			return;
+		}
+		Element root = doc.getDefaultRootElement();
+		int offset = e.getOffset();
+		int first = root.getElementIndex(offset);
+		int last = e.getType()==DocumentEvent.EventType.INSERT?root.getElementIndex(offset+e.getLength()):first;
+		int delta = root.getElementCount()-lines.size();
+		// Lines first to oldLast before the change became first to last after
+		int oldLast = last-delta;
+		if(oldLast<first||oldLast>=lines.size()){
+			markAll();
+			return;
+		}
+		if(dirtyFirst>=0){
+			// One range covering both, the lines in between are parsed again too
+			int unionFirst = Math.min(first, dirtyFirst), unionLast = Math.max(oldLast, dirtyLast);
+			dirtyOld.addAll(lines.subList(dirtyLast+1, unionLast+1));
+			dirtyOld.addAll(0, lines.subList(unionFirst, dirtyFirst));
+			first = unionFirst;
+			oldLast = unionLast;
+		}else{
+			dirtyOld.addAll(lines.subList(first, oldLast+1));
+		}
+		lines.subList(first, oldLast+1).clear();
+		lines.addAll(first, Collections.nCopies(oldLast+delta-first+1, (FCObj)null));
+		dirtyFirst = first;
+		dirtyLast = oldLast+delta;
+	}
+	
+	/**
+	 * Make every line dirty, for when changes couldn't be followed
+	 */
+	public void markAll(){
+		if(dirtyFirst>=0){
+			// Put the old objects back so they are all in line order
+			lines.subList(dirtyFirst, dirtyLast+1).clear();
+			lines.addAll(dirtyFirst, dirtyOld);
+		}
+		dirtyOld.clear();
+		dirtyOld.addAll(lines);
+		lines.clear();
+		int n = doc.getDefaultRootElement().getElementCount();
+		lines.addAll(Collections.nCopies(n, (FCObj)null));
+		dirtyFirst = 0;
+		dirtyLast = n-1;
+	}
+	
+	private void clearDirty(){
+		dirtyOld.clear();
+		dirtyFirst = dirtyLast = -1;
+	}
+	
+	/**
+	 * Copy the dirty lines out of the document, so they can
+	 * be parsed on another thread
+	 * 
+	 * @return the dirty lines joined by newlines, or null if there are none
+	 */
+	public String dirtyText(){
+		if(dirtyFirst<0)return null;
+		Element root = doc.getDefaultRootElement();
+		int start = root.getElement(dirtyFirst).getStartOffset();
+		// Newline is not part of the line
+		int end = Math.min(root.getElement(dirtyLast).getEndOffset()-1, doc.getLength());
+		try{
+			return doc.getText(start, end-start);
+		}catch(BadLocationException e){
+			return null;
+		}
+	}
+	
+	/**
+	 * Put a new parse of the dirty lines in place, keeping the old
+	 * object wherever a line still parses to exactly the same thing
+	 * <br>
+	 * Lines are matched from the start and the end, the lines
+	 * in between are matched one to one only if their count
+	 * did not change
+	 * 
+	 * @param parsed object for each dirty line, null where the line
+	 * isn't one, old objects are put back into it where kept
+	 * @param removed objects no longer in the document will be added to this
+	 * @param added new objects in the document will be added to this
+	 * @return true if any object was removed or added
+	 */
+	public boolean reconcile(FCObj[] parsed,Collection<FCObj> removed,Collection<FCObj> added){
+		final ArrayList<FCObj> old = dirtyOld;
+		final int n = parsed.length, m = old.size();
+		if(n!=dirtyLast-dirtyFirst+1)throw new IllegalArgumentException("Expected "+(dirtyLast-dirtyFirst+1)+" lines, got "+n);
+		final int limit = Math.min(n, m);
+		int head = 0;
+		while(head<limit&&same(old.get(head),parsed[head])){
+			parsed[head] = old.get(head);
+			head++;
+		}
+		int tail = 0;
+		while(head+tail<limit&&same(old.get(m-1-tail),parsed[n-1-tail])){
+			parsed[n-1-tail] = old.get(m-1-tail);
+			tail++;
+		}
+		boolean aligned = n==m;
+		boolean changed = false;
+		for(int i=head;i<m-tail;i++){
+			FCObj prev = old.get(i);
+			if(aligned&&same(prev,parsed[i])){
+				parsed[i] = prev;
+			}else{
+				if(prev!=null){
+					removed.add(prev);
+					changed = true;
+				}
+				if(aligned&&parsed[i]!=null){
+					added.add(parsed[i]);
+					changed = true;
+				}
+			}
+		}
+		if(!aligned){
+			for(int i=head;i<n-tail;i++){
+				if(parsed[i]!=null){
+					added.add(parsed[i]);
+					changed = true;
+				}
+			}
+		}
+		for(int i=0;i<n;i++){
+			lines.set(dirtyFirst+i, parsed[i]);
+		}
+		clearDirty();
+		return changed;
+	}
+	
+	/**
+	 * Are both null, or do both have exactly the same values?
+	 */
+	private static boolean same(FCObj a,FCObj b){
+		if(a==null||b==null)return a==b;
+		return a.type.equals(b.type)
+				&&a.z==b.z
+				&&Double.doubleToLongBits(a.x)==Double.doubleToLongBits(b.x)
+				&&Double.doubleToLongBits(a.y)==Double.doubleToLongBits(b.y)
+				&&Double.doubleToLongBits(a.w)==Double.doubleToLongBits(b.w)
+				&&Double.doubleToLongBits(a.h)==Double.doubleToLongBits(b.h)
+				&&Double.doubleToLongBits(a.r)==Double.doubleToLongBits(b.r)
+				&&a.joints.equals(b.joints);
+	}
+	
+	/**
+	 * Set the lines directly, for when the text was generated
+	 * from the objects and so they are already known
+	 * 
+	 * @param skip how many non-object lines come first
+	 * @param objs objects for the lines after that, in order
+	 */
+	public void assign(int skip,List<FCObj> objs){
+		lines.clear();
+		for(int i=0;i<skip;i++){
+			lines.add(null);
+		}
+		lines.addAll(objs);
+		clearDirty();
+		int n = doc.getDefaultRootElement().getElementCount();
+		while(lines.size()<n){
+			lines.add(null);
+		}
+		if(lines.size()!=n)markAll();
+	}
+	
+	/**
+	 * Find the line an object is on, using its <i>id</i>
+	 * 
+	 * @param obj an object which is in an {@link ObjectStore}
+	 * @return the line, or -1 if it isn't on any line
+	 */
+	public int lineOf(FCObj obj){
+		int id = obj.id;
+		if(id<0)return -1;
+		if(!(id<lineById.length&&isLineOf(lineById[id], obj))){
+			reindex();
+			if(!(id<lineById.length&&isLineOf(lineById[id], obj)))return -1;
+		}
+		return lineById[id];
+	}
+	
+	private boolean isLineOf(int line,FCObj obj){
+		return line>=0&&line<lines.size()&&lines.get(line)==obj;
+	}
+	
+	/**
+	 * Build <i>lineById</i> again from the lines
+	 */
+	private void reindex(){
+		int maxId = -1;
+		for(FCObj obj:lines){
+			if(obj!=null)maxId = Math.max(maxId, obj.id);
+		}
+		if(lineById.length<=maxId)lineById = new int[Math.max(maxId+1, lineById.length*2)];
+		Arrays.fill(lineById, -1);
+		for(int i=0,n=lines.size();i<n;i++){
+			FCObj obj = lines.get(i);
+			if(obj!=null&&obj.id>=0)lineById[obj.id] = i;
+		}
+	}
+	
+	/**
+	 * Get the objects on a range of lines, in line order
+	 * 
+	 * @param first first line, inclusive
+	 * @param last last line, inclusive
+	 * @param target list to add the objects to
+	 */
+	public void getObjects(int first,int last,Collection<FCObj> target){
+		last = Math.min(last, lines.size()-1);
+		for(int i=Math.max(first, 0);i<=last;i++){
+			FCObj obj = lines.get(i);
+			if(obj!=null)target.add(obj);
+		}
+	}
+	
+	/**
+	 * Count the objects on a range of lines
+	 * 
+	 * @param first first line, inclusive
+	 * @param last last line, inclusive
+	 * @return
+	 */
+	public int countObjects(int first,int last){
+		last = Math.min(last, lines.size()-1);
+		int count = 0;
+		for(int i=Math.max(first, 0);i<=last;i++){
+			if(lines.get(i)!=null)count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Parse a range of lines of the document, large ranges
+	 * are parsed in parallel by {@link BulkParser}
+	 * 
+	 * @param root root element of the document
+	 * @param first first line, inclusive
+	 * @param last last line, inclusive
+	 * @return object for each line, null where the line isn't one
+	 */
+	public FCObj[] parseElements(Element root,int first,int last){
+		int n = last-first+1;
+		int offset = root.getElement(first).getStartOffset();
+		int limit = Math.min(root.getElement(last).getEndOffset(), doc.getLength());
+		try{
+			doc.getText(offset, limit-offset, segment);
+		}catch(BadLocationException e){
+			return new FCObj[n];
+		}
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		for(int i=0;i<n;i++){
+			Element line = root.getElement(first+i);
+			starts[i] = line.getStartOffset()-offset;
+			// Newline is not part of the line
+			ends[i] = Math.min(line.getEndOffset()-1, limit)-offset;
+		}
+		return BulkParser.parseLines(segment, starts, ends, n, cache);
+	}
+	
+}